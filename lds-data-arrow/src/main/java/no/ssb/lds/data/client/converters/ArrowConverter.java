@@ -0,0 +1,386 @@
+package no.ssb.lds.data.client.converters;
+
+import io.reactivex.Completable;
+import io.reactivex.Flowable;
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.vector.BigIntVector;
+import org.apache.arrow.vector.BitVector;
+import org.apache.arrow.vector.DateDayVector;
+import org.apache.arrow.vector.FieldVector;
+import org.apache.arrow.vector.Float4Vector;
+import org.apache.arrow.vector.Float8Vector;
+import org.apache.arrow.vector.IntVector;
+import org.apache.arrow.vector.TimeStampMicroTZVector;
+import org.apache.arrow.vector.TimeStampMilliTZVector;
+import org.apache.arrow.vector.VarBinaryVector;
+import org.apache.arrow.vector.VarCharVector;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.dictionary.DictionaryProvider;
+import org.apache.arrow.vector.ipc.ArrowStreamReader;
+import org.apache.arrow.vector.ipc.ArrowStreamWriter;
+import org.apache.arrow.vector.types.DateUnit;
+import org.apache.arrow.vector.types.FloatingPointPrecision;
+import org.apache.arrow.vector.types.TimeUnit;
+import org.apache.arrow.vector.types.pojo.ArrowType;
+import org.apache.arrow.vector.types.pojo.Field;
+import org.apache.arrow.vector.types.pojo.FieldType;
+import org.apache.avro.LogicalType;
+import org.apache.avro.LogicalTypes;
+import org.apache.avro.Schema;
+import org.apache.avro.generic.GenericData;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.avro.util.Utf8;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Converts Apache Arrow IPC streams.
+ * <p>
+ * Records are written in batches of batchSize rows; each batch fills one set of column vectors that is sent as an
+ * Arrow record batch, so the clients read columns without parsing. Flat schemas with primitive, string, bytes,
+ * date and timestamp fields are supported; nullable unions map to nullable Arrow fields.
+ * <p>
+ * On read, the Arrow columns are matched to the fields of the schema by name.
+ * <p>
+ * On Java 9 and later, the JVM needs {@code --add-opens java.base/java.nio=ALL-UNNAMED} and
+ * {@code -Dio.netty.tryReflectionSetAccessible=true} for the Arrow allocator.
+ */
+public class ArrowConverter implements FormatConverter {
+
+    public static final int DEFAULT_BATCH_SIZE = 8192;
+
+    private static final String MEDIA_TYPE = "application/vnd.apache.arrow.stream";
+
+    private final BufferAllocator allocator;
+    private final int batchSize;
+
+    public ArrowConverter(BufferAllocator allocator) {
+        this(allocator, DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * Create a new converter.
+     *
+     * @param allocator the allocator the vectors are allocated from.
+     * @param batchSize the number of rows of the record batches.
+     */
+    public ArrowConverter(BufferAllocator allocator, int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("batchSize must be positive");
+        }
+        this.allocator = Objects.requireNonNull(allocator);
+        this.batchSize = batchSize;
+    }
+
+    private static Schema unwrapNullable(Schema schema) {
+        if (schema.getType() != Schema.Type.UNION) {
+            return schema;
+        }
+        Schema nonNull = null;
+        for (Schema type : schema.getTypes()) {
+            if (type.getType() != Schema.Type.NULL) {
+                if (nonNull != null) {
+                    throw new IllegalArgumentException("unsupported union " + schema);
+                }
+                nonNull = type;
+            }
+        }
+        return nonNull;
+    }
+
+    private static ArrowType toArrowType(Schema schema) {
+        LogicalType logicalType = schema.getLogicalType();
+        switch (schema.getType()) {
+            case STRING:
+            case ENUM:
+                return new ArrowType.Utf8();
+            case BYTES:
+                return new ArrowType.Binary();
+            case BOOLEAN:
+                return new ArrowType.Bool();
+            case INT:
+                if (logicalType instanceof LogicalTypes.Date) {
+                    return new ArrowType.Date(DateUnit.DAY);
+                }
+                return new ArrowType.Int(32, true);
+            case LONG:
+                if (logicalType instanceof LogicalTypes.TimestampMillis) {
+                    return new ArrowType.Timestamp(TimeUnit.MILLISECOND, "UTC");
+                } else if (logicalType instanceof LogicalTypes.TimestampMicros) {
+                    return new ArrowType.Timestamp(TimeUnit.MICROSECOND, "UTC");
+                }
+                return new ArrowType.Int(64, true);
+            case FLOAT:
+                return new ArrowType.FloatingPoint(FloatingPointPrecision.SINGLE);
+            case DOUBLE:
+                return new ArrowType.FloatingPoint(FloatingPointPrecision.DOUBLE);
+            default:
+                throw new IllegalArgumentException("unsupported type " + schema.getType());
+        }
+    }
+
+    /**
+     * Returns the Arrow schema of the records.
+     */
+    static org.apache.arrow.vector.types.pojo.Schema toArrowSchema(Schema schema) {
+        List<Field> fields = new ArrayList<>();
+        for (Schema.Field field : schema.getFields()) {
+            Schema fieldSchema = unwrapNullable(field.schema());
+            boolean nullable = fieldSchema != field.schema();
+            fields.add(new Field(field.name(), new FieldType(nullable, toArrowType(fieldSchema), null),
+                    Collections.emptyList()));
+        }
+        return new org.apache.arrow.vector.types.pojo.Schema(fields);
+    }
+
+    private static ColumnWriter columnWriter(FieldVector vector) {
+        if (vector instanceof VarCharVector) {
+            VarCharVector strings = (VarCharVector) vector;
+            return (index, value) -> {
+                if (value instanceof Utf8) {
+                    Utf8 utf8 = (Utf8) value;
+                    strings.setSafe(index, utf8.getBytes(), 0, utf8.getByteLength());
+                } else {
+                    strings.setSafe(index, value.toString().getBytes(StandardCharsets.UTF_8));
+                }
+            };
+        } else if (vector instanceof VarBinaryVector) {
+            VarBinaryVector bytes = (VarBinaryVector) vector;
+            return (index, value) -> {
+                ByteBuffer buffer = (ByteBuffer) value;
+                if (buffer.hasArray()) {
+                    bytes.setSafe(index, buffer.array(), buffer.arrayOffset() + buffer.position(),
+                            buffer.remaining());
+                } else {
+                    byte[] copy = new byte[buffer.remaining()];
+                    buffer.duplicate().get(copy);
+                    bytes.setSafe(index, copy);
+                }
+            };
+        } else if (vector instanceof BitVector) {
+            BitVector booleans = (BitVector) vector;
+            return (index, value) -> booleans.setSafe(index, (Boolean) value ? 1 : 0);
+        } else if (vector instanceof DateDayVector) {
+            DateDayVector dates = (DateDayVector) vector;
+            return (index, value) -> dates.setSafe(index, (Integer) value);
+        } else if (vector instanceof IntVector) {
+            IntVector ints = (IntVector) vector;
+            return (index, value) -> ints.setSafe(index, (Integer) value);
+        } else if (vector instanceof TimeStampMilliTZVector) {
+            TimeStampMilliTZVector timestamps = (TimeStampMilliTZVector) vector;
+            return (index, value) -> timestamps.setSafe(index, (Long) value);
+        } else if (vector instanceof TimeStampMicroTZVector) {
+            TimeStampMicroTZVector timestamps = (TimeStampMicroTZVector) vector;
+            return (index, value) -> timestamps.setSafe(index, (Long) value);
+        } else if (vector instanceof BigIntVector) {
+            BigIntVector longs = (BigIntVector) vector;
+            return (index, value) -> longs.setSafe(index, (Long) value);
+        } else if (vector instanceof Float4Vector) {
+            Float4Vector floats = (Float4Vector) vector;
+            return (index, value) -> floats.setSafe(index, (Float) value);
+        } else if (vector instanceof Float8Vector) {
+            Float8Vector doubles = (Float8Vector) vector;
+            return (index, value) -> doubles.setSafe(index, (Double) value);
+        }
+        throw new IllegalArgumentException("unsupported vector " + vector.getClass().getSimpleName());
+    }
+
+    private static ColumnReader columnReader(Schema.Field field, FieldVector vector) {
+        Schema schema = unwrapNullable(field.schema());
+        if (vector == null) {
+            if (field.defaultVal() != null) {
+                Object defaultValue = GenericData.get().getDefaultValue(field);
+                return index -> defaultValue;
+            } else if (schema != field.schema()) {
+                return index -> null;
+            }
+            throw new IllegalArgumentException("column " + field.name() + " is missing");
+        }
+        if (schema.getType() == Schema.Type.STRING && vector instanceof VarCharVector) {
+            VarCharVector strings = (VarCharVector) vector;
+            return index -> strings.isNull(index) ? null : new Utf8(strings.get(index));
+        } else if (schema.getType() == Schema.Type.ENUM && vector instanceof VarCharVector) {
+            VarCharVector strings = (VarCharVector) vector;
+            return index -> strings.isNull(index)
+                    ? null
+                    : new GenericData.EnumSymbol(schema, new String(strings.get(index), StandardCharsets.UTF_8));
+        } else if (schema.getType() == Schema.Type.BYTES && vector instanceof VarBinaryVector) {
+            VarBinaryVector bytes = (VarBinaryVector) vector;
+            return index -> bytes.isNull(index) ? null : ByteBuffer.wrap(bytes.get(index));
+        } else if (schema.getType() == Schema.Type.BOOLEAN && vector instanceof BitVector) {
+            BitVector booleans = (BitVector) vector;
+            return index -> booleans.isNull(index) ? null : booleans.get(index) != 0;
+        }
+        // The fixed width vectors return the boxed value.
+        Class<?> expected = expectedClass(schema);
+        return index -> {
+            Object value = vector.getObject(index);
+            if (value != null && !expected.isInstance(value)) {
+                throw new IllegalArgumentException("column " + field.name() + " contains " + value.getClass()
+                        .getSimpleName() + ", expected " + expected.getSimpleName());
+            }
+            return value;
+        };
+    }
+
+    private static Class<?> expectedClass(Schema schema) {
+        switch (schema.getType()) {
+            case INT:
+                return Integer.class;
+            case LONG:
+                return Long.class;
+            case FLOAT:
+                return Float.class;
+            case DOUBLE:
+                return Double.class;
+            default:
+                throw new IllegalArgumentException("unsupported type " + schema.getType());
+        }
+    }
+
+    @Override
+    public boolean doesSupport(String mediaType) {
+        if (mediaType == null) {
+            return false;
+        }
+        return mediaType.startsWith(MEDIA_TYPE);
+    }
+
+    @Override
+    public String getMediaType() {
+        return MEDIA_TYPE;
+    }
+
+    @Override
+    public Flowable<GenericRecord> read(InputStream input, String mimeType, Schema schema) {
+        return Flowable.<List<GenericRecord>, ArrowStreamReader>generate(
+                () -> new ArrowStreamReader(input, allocator),
+                (reader, emitter) -> {
+                    if (!reader.loadNextBatch()) {
+                        emitter.onComplete();
+                        return;
+                    }
+                    emitter.onNext(readBatch(reader.getVectorSchemaRoot(), schema));
+                },
+                ArrowStreamReader::close
+        ).concatMapIterable(records -> records);
+    }
+
+    private List<GenericRecord> readBatch(VectorSchemaRoot root, Schema schema) {
+        List<Schema.Field> fields = schema.getFields();
+        ColumnReader[] readers = new ColumnReader[fields.size()];
+        for (Schema.Field field : fields) {
+            readers[field.pos()] = columnReader(field, root.getVector(field.name()));
+        }
+        int rowCount = root.getRowCount();
+        List<GenericRecord> records = new ArrayList<>(rowCount);
+        for (int row = 0; row < rowCount; row++) {
+            GenericData.Record record = new GenericData.Record(schema);
+            for (int pos = 0; pos < readers.length; pos++) {
+                record.put(pos, readers[pos].read(row));
+            }
+            records.add(record);
+        }
+        return records;
+    }
+
+    @Override
+    public Completable write(Flowable<GenericRecord> records, OutputStream output, String mimeType, Schema schema) {
+        return Completable.using(
+                () -> new StreamWriter(VectorSchemaRoot.create(toArrowSchema(schema), allocator), output),
+                stream -> {
+                    List<FieldVector> vectors = stream.root.getFieldVectors();
+                    ColumnWriter[] writers = new ColumnWriter[vectors.size()];
+                    for (int i = 0; i < writers.length; i++) {
+                        writers[i] = columnWriter(vectors.get(i));
+                    }
+                    stream.writer.start();
+                    return records.buffer(batchSize)
+                            .doOnNext(batch -> writeBatch(stream, vectors, writers, batch))
+                            .doOnComplete(() -> {
+                                stream.writer.end();
+                                output.flush();
+                            })
+                            .ignoreElements();
+                },
+                StreamWriter::close
+        );
+    }
+
+    private void writeBatch(StreamWriter stream, List<FieldVector> vectors, ColumnWriter[] writers,
+                            List<GenericRecord> batch) throws IOException {
+        // The validity buffers are cleared, values that are not set are null.
+        for (FieldVector vector : vectors) {
+            vector.allocateNew();
+        }
+        for (int row = 0; row < batch.size(); row++) {
+            GenericRecord record = batch.get(row);
+            for (int pos = 0; pos < writers.length; pos++) {
+                Object value = record.get(pos);
+                if (value != null) {
+                    writers[pos].write(row, value);
+                }
+            }
+        }
+        stream.root.setRowCount(batch.size());
+        stream.writer.writeBatch();
+    }
+
+    /**
+     * The vectors and the Arrow writer of one output, closed together whether the records complete or fail.
+     * <p>
+     * The output belongs to the caller, closing the Arrow writer only flushes it.
+     */
+    private static class StreamWriter implements AutoCloseable {
+
+        private final VectorSchemaRoot root;
+        private final ArrowStreamWriter writer;
+
+        private StreamWriter(VectorSchemaRoot root, OutputStream output) {
+            this.root = root;
+            try {
+                this.writer = new ArrowStreamWriter(root, new DictionaryProvider.MapDictionaryProvider(),
+                        new FilterOutputStream(output) {
+                            @Override
+                            public void write(byte[] bytes, int offset, int length) throws IOException {
+                                out.write(bytes, offset, length);
+                            }
+
+                            @Override
+                            public void close() throws IOException {
+                                flush();
+                            }
+                        });
+            } catch (RuntimeException re) {
+                root.close();
+                throw re;
+            }
+        }
+
+        @Override
+        public void close() {
+            try (VectorSchemaRoot vectors = root) {
+                writer.close();
+            }
+        }
+    }
+
+    @FunctionalInterface
+    private interface ColumnWriter {
+        void write(int index, Object value);
+    }
+
+    @FunctionalInterface
+    private interface ColumnReader {
+        Object read(int index);
+    }
+}
@@ -0,0 +1,165 @@
+package no.ssb.lds.data.client.converters;
+
+import io.reactivex.Flowable;
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.memory.RootAllocator;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.ipc.ArrowStreamReader;
+import org.apache.avro.LogicalTypes;
+import org.apache.avro.Schema;
+import org.apache.avro.SchemaBuilder;
+import org.apache.avro.generic.GenericData;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.avro.generic.GenericRecordBuilder;
+import org.apache.avro.util.Utf8;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ArrowConverterTest {
+
+    private static final Schema SCHEMA = SchemaBuilder.record("root").fields()
+            .requiredString("string")
+            .optionalInt("int")
+            .requiredBoolean("boolean")
+            .requiredFloat("float")
+            .optionalLong("long")
+            .requiredDouble("double")
+            .name("bytes").type().bytesType().noDefault()
+            .name("date").type(LogicalTypes.date().addToSchema(Schema.create(Schema.Type.INT))).noDefault()
+            .endRecord();
+
+    private BufferAllocator allocator;
+    private ArrowConverter converter;
+
+    @BeforeEach
+    void setUp() {
+        allocator = new RootAllocator(Long.MAX_VALUE);
+        converter = new ArrowConverter(allocator, 100);
+    }
+
+    @AfterEach
+    void tearDown() {
+        assertThat(allocator.getAllocatedMemory()).isZero();
+        allocator.close();
+    }
+
+    private static List<GenericRecord> generateRecords(int count) {
+        GenericRecordBuilder builder = new GenericRecordBuilder(SCHEMA)
+                .set("boolean", true)
+                .set("float", 1.5F)
+                .set("double", 2.5D)
+                .set("bytes", ByteBuffer.wrap(new byte[]{1, 2, 3}));
+        return Flowable.range(0, count).map(i -> (GenericRecord) builder
+                .set("string", new Utf8("row " + i))
+                .set("int", i % 10 == 0 ? null : i)
+                .set("long", i % 7 == 0 ? null : (long) i)
+                .set("date", i)
+                .build()).toList().blockingGet();
+    }
+
+    @Test
+    void testWriteAndRead() throws IOException {
+
+        List<GenericRecord> records = generateRecords(250);
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        converter.write(Flowable.fromIterable(records), output, converter.getMediaType(), SCHEMA).blockingAwait();
+
+        // Plain Arrow readers see batches of columns.
+        try (ArrowStreamReader reader = new ArrowStreamReader(new ByteArrayInputStream(output.toByteArray()),
+                allocator)) {
+            VectorSchemaRoot root = reader.getVectorSchemaRoot();
+            assertThat(root.getSchema()).isEqualTo(ArrowConverter.toArrowSchema(SCHEMA));
+            int batches = 0;
+            while (reader.loadNextBatch()) {
+                batches++;
+            }
+            assertThat(batches).isEqualTo(3);
+        }
+
+        List<GenericRecord> read = converter.read(new ByteArrayInputStream(output.toByteArray()),
+                converter.getMediaType(), SCHEMA).toList().blockingGet();
+        assertThat(read).containsExactlyElementsOf(records);
+    }
+
+    @Test
+    void testWriteAndReadLogicalTypes() {
+
+        Schema color = SchemaBuilder.enumeration("color").symbols("RED", "GREEN");
+        Schema schema = SchemaBuilder.record("root").fields()
+                .optionalString("string")
+                .name("color").type(color).noDefault()
+                .name("date").type().optional().type(LogicalTypes.date()
+                        .addToSchema(Schema.create(Schema.Type.INT)))
+                .name("millis").type(LogicalTypes.timestampMillis()
+                        .addToSchema(Schema.create(Schema.Type.LONG))).noDefault()
+                .name("micros").type().optional().type(LogicalTypes.timestampMicros()
+                        .addToSchema(Schema.create(Schema.Type.LONG)))
+                .endRecord();
+        List<GenericRecord> records = Flowable.range(0, 150).map(i -> (GenericRecord) new GenericRecordBuilder(schema)
+                .set("string", i % 3 == 0 ? null : new Utf8("row " + i))
+                .set("color", new GenericData.EnumSymbol(color, i % 2 == 0 ? "RED" : "GREEN"))
+                .set("date", i % 5 == 0 ? null : 18_000 + i)
+                .set("millis", 1_560_000_000_000L + i)
+                .set("micros", i % 4 == 0 ? null : 1_560_000_000_000_000L + i)
+                .build()).toList().blockingGet();
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        converter.write(Flowable.fromIterable(records), output, converter.getMediaType(), schema).blockingAwait();
+
+        List<GenericRecord> read = converter.read(new ByteArrayInputStream(output.toByteArray()),
+                converter.getMediaType(), schema).toList().blockingGet();
+        assertThat(read).containsExactlyElementsOf(records);
+        assertThat(read.get(0).get("string")).isNull();
+        assertThat(read.get(0).get("date")).isNull();
+        assertThat(read.get(0).get("micros")).isNull();
+        assertThat(read.get(1).get("color")).isEqualTo(new GenericData.EnumSymbol(color, "GREEN"));
+        assertThat(read.get(1).get("millis")).isEqualTo(1_560_000_000_000L + 1);
+    }
+
+    @Test
+    void testEmpty() {
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        converter.write(Flowable.empty(), output, converter.getMediaType(), SCHEMA).blockingAwait();
+
+        List<GenericRecord> read = converter.read(new ByteArrayInputStream(output.toByteArray()),
+                converter.getMediaType(), SCHEMA).toList().blockingGet();
+        assertThat(read).isEmpty();
+    }
+
+    @Test
+    void testWriteError() {
+
+        AtomicBoolean closed = new AtomicBoolean();
+        ByteArrayOutputStream output = new ByteArrayOutputStream() {
+            @Override
+            public void close() {
+                closed.set(true);
+            }
+        };
+        Flowable<GenericRecord> failing = Flowable.fromIterable(generateRecords(150))
+                .concatWith(Flowable.error(new IOException("failed")));
+        converter.write(failing, output, converter.getMediaType(), SCHEMA).test()
+                .assertError(IOException.class);
+
+        // The vectors are released (see tearDown) and the output is left open.
+        assertThat(closed).isFalse();
+    }
+
+    @Test
+    void testSupportsMime() {
+        assertThat(converter.doesSupport(converter.getMediaType())).isTrue();
+        assertThat(converter.doesSupport("application/json")).isFalse();
+    }
+}
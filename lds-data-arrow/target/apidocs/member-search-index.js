@@ -0,0 +1 @@
+memberSearchIndex = [{"p":"no.ssb.lds.data.client.converters","c":"ArrowConverter","l":"ArrowConverter(BufferAllocator)","u":"%3Cinit%3E(org.apache.arrow.memory.BufferAllocator)"},{"p":"no.ssb.lds.data.client.converters","c":"ArrowConverter","l":"ArrowConverter(BufferAllocator, int)","u":"%3Cinit%3E(org.apache.arrow.memory.BufferAllocator,int)"},{"p":"no.ssb.lds.data.client.converters","c":"ArrowConverter","l":"DEFAULT_BATCH_SIZE"},{"p":"no.ssb.lds.data.client.converters","c":"ArrowConverter","l":"doesSupport(String)","u":"doesSupport(java.lang.String)"},{"p":"no.ssb.lds.data.client.converters","c":"ArrowConverter","l":"getMediaType()"},{"p":"no.ssb.lds.data.client.converters","c":"ArrowConverter","l":"read(InputStream, String, Schema)","u":"read(java.io.InputStream,java.lang.String,org.apache.avro.Schema)"},{"p":"no.ssb.lds.data.client.converters","c":"ArrowConverter","l":"write(Flowable<GenericRecord>, OutputStream, String, Schema)","u":"write(io.reactivex.Flowable,java.io.OutputStream,java.lang.String,org.apache.avro.Schema)"}];updateSearchResults();
\ No newline at end of file
@@ -0,0 +1 @@
+packageSearchIndex = [{"l":"All Packages","u":"allpackages-index.html"},{"l":"no.ssb.lds.data.client.converters"}];updateSearchResults();
\ No newline at end of file
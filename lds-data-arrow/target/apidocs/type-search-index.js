@@ -0,0 +1 @@
+typeSearchIndex = [{"l":"All Classes and Interfaces","u":"allclasses-index.html"},{"p":"no.ssb.lds.data.client.converters","l":"ArrowConverter"}];updateSearchResults();
\ No newline at end of file
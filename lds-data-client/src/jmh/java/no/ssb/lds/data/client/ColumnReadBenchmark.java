@@ -0,0 +1,101 @@
+package no.ssb.lds.data.client;
+
+import io.reactivex.Flowable;
+import org.apache.avro.Schema;
+import org.apache.avro.SchemaBuilder;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.avro.generic.GenericRecordBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares summing a long column through {@link DataClient#readData} and {@link DataClient#readColumns}.
+ * <p>
+ * Run with {@code mvn -Pbenchmark test-compile exec:java -Dexec.args="ColumnReadBenchmark -prof gc"}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ColumnReadBenchmark {
+
+    private static final Schema SCHEMA = SchemaBuilder.record("root").fields()
+            .requiredString("string")
+            .requiredInt("int")
+            .optionalLong("long")
+            .requiredDouble("double")
+            .endRecord();
+
+    private static final Schema PROJECTION = SchemaBuilder.record("root").fields()
+            .optionalLong("long")
+            .endRecord();
+
+    @Param({"1000000"})
+    private int rows;
+
+    private DataClient client;
+
+    @Setup
+    public void setUp() throws IOException {
+        String prefix = Files.createTempDirectory("lds-data-client-benchmark").toString();
+        DataClient.Configuration configuration = new DataClient.Configuration();
+        configuration.setLocation(prefix);
+        client = DataClient.builder()
+                .withParquetProvider(new ParquetProvider(new ParquetProvider.Configuration()))
+                .withBinaryBackend(new LocalBackend(prefix))
+                .withConfiguration(configuration)
+                .build();
+
+        GenericRecordBuilder builder = new GenericRecordBuilder(SCHEMA);
+        Flowable<GenericRecord> records = Flowable.range(0, rows).map(i -> builder
+                .set("string", "row " + i)
+                .set("int", i)
+                .set("long", i % 10 == 0 ? null : (long) i)
+                .set("double", i / 2.0)
+                .build());
+        client.writeAllData("benchmark", SCHEMA, records, "").blockingAwait();
+    }
+
+    @Benchmark
+    public long records() {
+        return client.readData("benchmark", PROJECTION, "", null)
+                .map(record -> {
+                    Object value = record.get("long");
+                    return value == null ? 0L : (Long) value;
+                })
+                .reduce(0L, Long::sum)
+                .blockingGet();
+    }
+
+    @Benchmark
+    public long columns() {
+        return client.readColumns("benchmark", PROJECTION, "", null)
+                .map(batch -> {
+                    ColumnVector column = batch.getColumn("long");
+                    long[] values = column.getLongs();
+                    long sum = 0;
+                    // Nulls are stored as 0.
+                    for (int i = 0; i < batch.getRowCount(); i++) {
+                        sum += values[i];
+                    }
+                    return sum;
+                })
+                .reduce(0L, Long::sum)
+                .blockingGet();
+    }
+}
@@ -0,0 +1,85 @@
+package no.ssb.lds.data.client;
+
+import io.reactivex.Flowable;
+import org.apache.avro.Schema;
+import org.apache.avro.SchemaBuilder;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.avro.generic.GenericRecordBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the latency of reading one page with a cursor at increasing offsets.
+ * <p>
+ * The cursor locates the row groups of the page from the footer row counts, so the latency should stay flat as
+ * the offset grows instead of growing with the number of records before the page.
+ * <p>
+ * Run with {@code mvn -Pbenchmark test-compile exec:java -Dexec.args="PagingBenchmark -f 0"}; exec:java runs
+ * in the Maven JVM, whose class path the forked JVMs cannot use.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PagingBenchmark {
+
+    private static final Schema SCHEMA = SchemaBuilder.record("root").fields()
+            .requiredLong("id")
+            .requiredString("region")
+            .requiredDouble("measure")
+            .endRecord();
+
+    private static final int ROWS = 2_000_000;
+
+    @Param({"0", "10000", "1000000", "1999000"})
+    private long offset;
+
+    @Param({"100"})
+    private int pageSize;
+
+    private DataClient client;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        String directory = Files.createTempDirectory("lds-data-client-benchmark").toString();
+        ParquetProvider.Configuration parquetConfiguration = new ParquetProvider.Configuration();
+        parquetConfiguration.setRowGroupSize(1024 * 1024);
+        DataClient.Configuration configuration = new DataClient.Configuration();
+        configuration.setLocation(directory);
+        client = DataClient.builder()
+                .withParquetProvider(new ParquetProvider(parquetConfiguration))
+                .withBinaryBackend(new LocalBackend(directory))
+                .withConfiguration(configuration)
+                .build();
+
+        GenericRecordBuilder builder = new GenericRecordBuilder(SCHEMA);
+        Flowable<GenericRecord> records = Flowable.range(0, ROWS).map(i -> builder
+                .set("id", (long) i)
+                .set("region", "region " + (i % 20))
+                .set("measure", i * 0.5)
+                .build());
+        client.writeAllData("paging", SCHEMA, records, "").blockingAwait();
+    }
+
+    @Benchmark
+    public List<GenericRecord> readPage() {
+        return client.readData("paging", SCHEMA, "", new Cursor<>(pageSize, offset)).toList().blockingGet();
+    }
+}
@@ -0,0 +1,113 @@
+package no.ssb.lds.data.client;
+
+import io.reactivex.Flowable;
+import org.apache.avro.Schema;
+import org.apache.avro.SchemaBuilder;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.avro.generic.GenericRecordBuilder;
+import org.apache.parquet.column.ParquetProperties;
+import org.apache.parquet.hadoop.metadata.BlockMetaData;
+import org.apache.parquet.hadoop.metadata.CompressionCodecName;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the write and read throughput and the file size of the writer settings.
+ * <p>
+ * The data mimics a typical dataset: a low cardinality string, an increasing id, a random measure and a sparse
+ * optional column. The compressed size of the written row groups is reported as the fileBytes secondary
+ * result.
+ * <p>
+ * Run with {@code mvn -Pbenchmark test-compile exec:java -Dexec.args=WriterSettingsBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class WriterSettingsBenchmark {
+
+    private static final Schema SCHEMA = SchemaBuilder.record("root").fields()
+            .requiredString("region")
+            .requiredLong("id")
+            .requiredDouble("measure")
+            .optionalString("comment")
+            .endRecord();
+
+    @Param({"UNCOMPRESSED", "SNAPPY", "GZIP"})
+    private CompressionCodecName codec;
+
+    @Param({"true", "false"})
+    private boolean dictionary;
+
+    @Param({"PARQUET_1_0", "PARQUET_2_0"})
+    private ParquetProperties.WriterVersion version;
+
+    @Param({"200000"})
+    private int rows;
+
+    private DataClient client;
+    private List<GenericRecord> records;
+
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class FileSize {
+        public long fileBytes;
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        String directory = Files.createTempDirectory("lds-data-client-benchmark").toString();
+        ParquetProvider.Configuration parquetConfiguration = new ParquetProvider.Configuration();
+        parquetConfiguration.setCompressionCodec(codec);
+        parquetConfiguration.setDictionaryEncoding(dictionary);
+        parquetConfiguration.setWriterVersion(version);
+        DataClient.Configuration configuration = new DataClient.Configuration();
+        configuration.setLocation(directory);
+        client = DataClient.builder()
+                .withParquetProvider(new ParquetProvider(parquetConfiguration))
+                .withBinaryBackend(new LocalBackend(directory))
+                .withConfiguration(configuration)
+                .build();
+
+        GenericRecordBuilder builder = new GenericRecordBuilder(SCHEMA);
+        Random random = new Random(42);
+        records = Flowable.range(0, rows).map(i -> (GenericRecord) builder
+                .set("region", "region " + random.nextInt(20))
+                .set("id", 1_000_000L + i)
+                .set("measure", random.nextGaussian() * 1000)
+                .set("comment", i % 50 == 0 ? "comment " + random.nextInt() : null)
+                .build()).toList().blockingGet();
+        client.writeAllData("read", SCHEMA, Flowable.fromIterable(records), "").blockingAwait();
+    }
+
+    @Benchmark
+    public void write(FileSize size) throws IOException {
+        client.writeAllData("write", SCHEMA, Flowable.fromIterable(records), "").blockingAwait();
+        size.fileBytes = client.readMetadata("write", "").getBlocks().stream()
+                .mapToLong(BlockMetaData::getCompressedSize).sum();
+    }
+
+    @Benchmark
+    public long read() {
+        return client.readData("read", SCHEMA, "", null).count().blockingGet();
+    }
+}
@@ -0,0 +1,140 @@
+package no.ssb.lds.data.client.converters;
+
+import org.apache.avro.Schema;
+import org.apache.avro.SchemaBuilder;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.avro.generic.GenericRecordBuilder;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVRecord;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the precompiled {@link CsvRecordParser} with the previous per field switch and
+ * {@link GenericRecordBuilder} conversion.
+ * <p>
+ * Run with {@code mvn -Pbenchmark test-compile exec:java -Dexec.args=CsvConverterBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CsvConverterBenchmark {
+
+    private static final Schema SCHEMA = SchemaBuilder.record("root").fields()
+            .requiredString("string")
+            .requiredInt("int")
+            .requiredBoolean("boolean")
+            .requiredFloat("float")
+            .requiredLong("long")
+            .requiredDouble("double")
+            .endRecord();
+
+    @Param({"100000"})
+    private int rows;
+
+    private byte[] csv;
+
+    private static GenericRecord encodeWithBuilder(CSVRecord record, Schema schema) {
+        GenericRecordBuilder recordBuilder = new GenericRecordBuilder(schema);
+        for (Schema.Field field : schema.getFields()) {
+            String name = field.name();
+            String value = record.get(name);
+            switch (field.schema().getType()) {
+                case STRING:
+                    recordBuilder.set(name, value);
+                    break;
+                case INT:
+                    recordBuilder.set(name, Integer.parseInt(value));
+                    break;
+                case LONG:
+                    recordBuilder.set(name, Long.parseLong(value));
+                    break;
+                case BOOLEAN:
+                    recordBuilder.set(name, Boolean.parseBoolean(value));
+                    break;
+                case FLOAT:
+                    recordBuilder.set(name, Float.parseFloat(value));
+                    break;
+                case DOUBLE:
+                    recordBuilder.set(name, Double.parseDouble(value));
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unsupported type");
+            }
+        }
+        return recordBuilder.build();
+    }
+
+    @Setup
+    public void setUp() {
+        StringBuilder builder = new StringBuilder("string,int,boolean,float,long,double\r\n");
+        for (int i = 0; i < rows; i++) {
+            builder.append("value").append(i).append(',')
+                    .append(i).append(',')
+                    .append(i % 2 == 0).append(',')
+                    .append(i * 1.5F).append(',')
+                    .append(i * 1000L).append(',')
+                    .append(i * 0.25D).append("\r\n");
+        }
+        csv = builder.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public void tokenizeOnly(Blackhole blackhole) throws IOException {
+        try (CSVParser parser = parser()) {
+            for (CSVRecord record : parser) {
+                blackhole.consume(record);
+            }
+        }
+    }
+
+    @Benchmark
+    public void recordBuilder(Blackhole blackhole) throws IOException {
+        try (CSVParser parser = parser()) {
+            for (CSVRecord record : parser) {
+                blackhole.consume(encodeWithBuilder(record, SCHEMA));
+            }
+        }
+    }
+
+    @Benchmark
+    public void precompiledParsers(Blackhole blackhole) throws IOException {
+        try (CSVParser parser = parser()) {
+            CsvRecordParser recordParser = new CsvRecordParser(SCHEMA, parser.getHeaderMap());
+            for (CSVRecord record : parser) {
+                blackhole.consume(recordParser.parse(record));
+            }
+        }
+    }
+
+    @Benchmark
+    public void converter(Blackhole blackhole) {
+        new CsvConverter().read(new ByteArrayInputStream(csv), "text/csv", SCHEMA)
+                .blockingForEach(blackhole::consume);
+    }
+
+    private CSVParser parser() throws IOException {
+        return CSVFormat.RFC4180.withFirstRecordAsHeader()
+                .parse(new InputStreamReader(new ByteArrayInputStream(csv), StandardCharsets.UTF_8));
+    }
+}
@@ -3,20 +3,103 @@ package no.ssb.lds.data.client;
 import io.reactivex.Flowable;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.channels.SeekableByteChannel;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Binary file system abstraction.
  */
 public interface BinaryBackend {
 
+    long DEFAULT_MAX_GAP = 1024 * 1024;
+
+    /**
+     * Returns the files whose path starts with the given path.
+     * <p>
+     * The paths should be emitted as they are found rather than after the whole listing. The order is backend
+     * specific, callers that need one sort the paths themselves.
+     */
     Flowable<String> list(String path) throws IOException;
 
+    /**
+     * Returns the files whose path starts with the given path with their {@link #version(String)}, like
+     * {@link #list(String)}.
+     * <p>
+     * Backends that get the versions with the listing (object metadata, file status) should override this method,
+     * the default implementation calls {@link #version(String)} for each file.
+     */
+    default Flowable<VersionedPath> listVersions(String path) throws IOException {
+        Flowable<String> paths = list(path);
+        if (paths == null) {
+            return null;
+        }
+        return paths.map(file -> new VersionedPath(file, version(file)));
+    }
+
     SeekableByteChannel read(String path) throws IOException;
 
+    /**
+     * Opens the file at a version returned by {@link #version(String)}.
+     * <p>
+     * Backends that keep versions read exactly that version, or fail if it is gone, so that the data matches what
+     * was cached under the version. They can also use the version to skip the metadata lookup of
+     * {@link #read(String)}. The default implementation ignores the version.
+     */
+    default SeekableByteChannel read(String path, String version) throws IOException {
+        return read(path);
+    }
+
+    /**
+     * Reads several ranges of a file in one batch.
+     * <p>
+     * Ranges separated by less than {@link #DEFAULT_MAX_GAP} bytes are merged and read together. Returns one read
+     * only buffer per range, in the order of the ranges. The default implementation reads the merged ranges one
+     * after the other from {@link #read(String)}; backends with a high latency per request should read them
+     * concurrently.
+     */
+    default List<ByteBuffer> readRanges(String path, List<Range> ranges) throws IOException {
+        List<Range> merged = Range.coalesce(ranges, DEFAULT_MAX_GAP);
+        List<ByteBuffer> buffers = new ArrayList<>(merged.size());
+        try (SeekableByteChannel channel = read(path)) {
+            for (Range range : merged) {
+                buffers.add(Range.read(channel, range));
+            }
+        }
+        return Range.slice(ranges, merged, buffers);
+    }
+
+    /**
+     * Reads several ranges of the file at a version returned by {@link #version(String)}, see
+     * {@link #read(String, String)}. The default implementation ignores the version.
+     */
+    default List<ByteBuffer> readRanges(String path, String version, List<Range> ranges) throws IOException {
+        return readRanges(path, ranges);
+    }
+
+    /**
+     * Returns a token that changes whenever the content of the path changes (generation, modification time...).
+     * <p>
+     * The token is used to cache information about the files. Backends that cannot provide one return null, in
+     * which case nothing is cached.
+     */
+    default String version(String path) throws IOException {
+        return null;
+    }
+
     SeekableByteChannel write(String path) throws IOException;
 
+    /**
+     * Moves a file, replacing the destination if it exists.
+     */
     void move(String from, String to) throws IOException;
 
+    /**
+     * Deletes a file. Throws a {@link java.io.FileNotFoundException} if there is no file at the path.
+     * <p>
+     * Like with object stores, "directories" only exist while they contain files; backends with real directories
+     * remove the ones left empty below their base location, never the base location itself.
+     */
     void delete(String path) throws IOException;
 }
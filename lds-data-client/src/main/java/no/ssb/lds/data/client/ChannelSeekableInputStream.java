@@ -0,0 +1,182 @@
+package no.ssb.lds.data.client;
+
+import org.apache.parquet.io.SeekableInputStream;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.util.Objects;
+
+/**
+ * A {@link SeekableInputStream} that reads from a {@link SeekableByteChannel}.
+ * <p>
+ * {@link ByteBuffer} reads, heap or direct, are forwarded to {@link SeekableByteChannel#read(ByteBuffer)} without
+ * intermediate arrays. Reads smaller than the buffer size go through a read-ahead buffer instead, so the small
+ * reads of parquet (footer, small column chunks close to each other) are coalesced into one larger read of the
+ * backend. Seeks are lazy; the position of the channel is only changed when the next read needs it.
+ */
+class ChannelSeekableInputStream extends SeekableInputStream {
+
+    private final SeekableByteChannel channel;
+    private final ByteBuffer buffer;
+    // Used by read() when there is no read-ahead buffer.
+    private final ByteBuffer single = ByteBuffer.allocate(1);
+    private long bufferStart = 0;
+    private long pos;
+    private long channelPos;
+
+    /**
+     * Create a new stream at the position of the channel.
+     *
+     * @param channel    the channel to read from.
+     * @param bufferSize the size of the read-ahead buffer, 0 disables it.
+     */
+    ChannelSeekableInputStream(SeekableByteChannel channel, int bufferSize) throws IOException {
+        this.channel = Objects.requireNonNull(channel);
+        this.buffer = bufferSize > 0 ? ByteBuffer.allocate(bufferSize).limit(0) : null;
+        this.pos = channel.position();
+        this.channelPos = pos;
+    }
+
+    private int buffered() {
+        if (buffer == null || pos < bufferStart || pos >= bufferStart + buffer.limit()) {
+            return 0;
+        }
+        return (int) (bufferStart + buffer.limit() - pos);
+    }
+
+    private int copyBuffered(ByteBuffer dst) {
+        int count = Math.min(buffered(), dst.remaining());
+        ByteBuffer source = buffer.duplicate();
+        source.position((int) (pos - bufferStart));
+        source.limit(source.position() + count);
+        dst.put(source);
+        pos += count;
+        return count;
+    }
+
+    /**
+     * Reads from the channel into dst, returns the number of bytes read or -1 at the end of the channel.
+     * <p>
+     * The bytes copied are counted rather than trusting the returned value since some channels return -1 with the
+     * last bytes.
+     */
+    private int readChannel(ByteBuffer dst) throws IOException {
+        if (channelPos != pos) {
+            channel.position(pos);
+        }
+        int start = dst.position();
+        int result = channel.read(dst);
+        int read = dst.position() - start;
+        pos += read;
+        channelPos = pos;
+        return read == 0 && result < 0 ? -1 : read;
+    }
+
+    /**
+     * Fills the buffer with the bytes at the current position. Returns false at the end of the channel.
+     */
+    private boolean fill() throws IOException {
+        long start = pos;
+        buffer.clear();
+        try {
+            while (buffer.hasRemaining()) {
+                if (readChannel(buffer) < 0) {
+                    break;
+                }
+            }
+        } finally {
+            buffer.flip();
+            bufferStart = start;
+            pos = start;
+        }
+        return buffer.hasRemaining();
+    }
+
+    @Override
+    public long getPos() {
+        return pos;
+    }
+
+    @Override
+    public void seek(long newPos) {
+        if (newPos < 0) {
+            throw new IllegalArgumentException("negative position");
+        }
+        pos = newPos;
+    }
+
+    @Override
+    public int read(ByteBuffer dst) throws IOException {
+        if (!dst.hasRemaining()) {
+            return 0;
+        }
+        if (buffer != null) {
+            if (buffered() > 0) {
+                return copyBuffered(dst);
+            }
+            if (dst.remaining() < buffer.capacity()) {
+                return fill() ? copyBuffered(dst) : -1;
+            }
+        }
+        return readChannel(dst);
+    }
+
+    @Override
+    public void readFully(ByteBuffer dst) throws IOException {
+        while (dst.hasRemaining()) {
+            if (read(dst) < 0) {
+                throw new EOFException("reached the end of the channel with " + dst.remaining()
+                        + " bytes left to read");
+            }
+        }
+    }
+
+    /**
+     * Reads one byte from the read-ahead buffer, parquet decodes the page headers and the footer byte by byte.
+     */
+    @Override
+    public int read() throws IOException {
+        if (buffer != null) {
+            if (buffered() == 0 && !fill()) {
+                return -1;
+            }
+            return buffer.get((int) (pos++ - bufferStart)) & 0xFF;
+        }
+        single.clear();
+        return read(single) < 0 ? -1 : single.get(0) & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        return read(ByteBuffer.wrap(b, off, len));
+    }
+
+    @Override
+    public void readFully(byte[] bytes) throws IOException {
+        readFully(ByteBuffer.wrap(bytes));
+    }
+
+    @Override
+    public void readFully(byte[] bytes, int start, int len) throws IOException {
+        readFully(ByteBuffer.wrap(bytes, start, len));
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        long skipped = Math.max(Math.min(n, channel.size() - pos), 0);
+        pos += skipped;
+        return skipped;
+    }
+
+    @Override
+    public int available() {
+        return buffered();
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
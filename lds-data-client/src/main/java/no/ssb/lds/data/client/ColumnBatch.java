@@ -0,0 +1,45 @@
+package no.ssb.lds.data.client;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A batch of rows stored by column, see {@link DataClient#readColumns(String, org.apache.avro.Schema, String,
+ * RowFilter)}.
+ * <p>
+ * All the columns have {@link #getRowCount()} values and are in the order of the fields of the requested schema.
+ */
+public class ColumnBatch {
+
+    private final int rowCount;
+    private final Map<String, ColumnVector> columns = new LinkedHashMap<>();
+
+    ColumnBatch(int rowCount, List<ColumnVector> columns) {
+        this.rowCount = rowCount;
+        for (ColumnVector column : columns) {
+            this.columns.put(column.getName(), column);
+        }
+    }
+
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * Returns the column with the given name.
+     *
+     * @throws IllegalArgumentException if the batch does not contain the column.
+     */
+    public ColumnVector getColumn(String name) {
+        ColumnVector column = columns.get(name);
+        if (column == null) {
+            throw new IllegalArgumentException("no column " + name);
+        }
+        return column;
+    }
+
+    public List<ColumnVector> getColumns() {
+        return List.copyOf(columns.values());
+    }
+}
@@ -0,0 +1,174 @@
+package no.ssb.lds.data.client;
+
+import org.apache.avro.Schema;
+import org.apache.parquet.column.ColumnDescriptor;
+import org.apache.parquet.column.ColumnReader;
+import org.apache.parquet.column.impl.ColumnReadStoreImpl;
+import org.apache.parquet.column.page.PageReadStore;
+import org.apache.parquet.hadoop.ParquetFileReader;
+import org.apache.parquet.io.api.Binary;
+import org.apache.parquet.io.api.Converter;
+import org.apache.parquet.io.api.GroupConverter;
+import org.apache.parquet.io.api.PrimitiveConverter;
+import org.apache.parquet.schema.MessageType;
+import org.apache.parquet.schema.PrimitiveType;
+import org.apache.parquet.schema.Type;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Reads a parquet file one row group at a time into {@link ColumnBatch}es.
+ * <p>
+ * The values are decoded straight from the column readers into primitive arrays, no record is assembled. Only
+ * flat schemas are supported: the fields must map to primitive, non repeated columns.
+ */
+public class ColumnBatchReader implements Closeable {
+
+    private static final PrimitiveConverter NOOP_CONVERTER = new PrimitiveConverter() {
+    };
+
+    private final ParquetFileReader reader;
+    private final MessageType projection;
+    private final String createdBy;
+    private final GroupConverter converter;
+
+    ColumnBatchReader(ParquetFileReader reader, Schema schema) {
+        this.reader = Objects.requireNonNull(reader);
+        MessageType fileSchema = reader.getFooter().getFileMetaData().getSchema();
+        List<Type> types = new ArrayList<>();
+        for (Schema.Field field : schema.getFields()) {
+            if (!fileSchema.containsField(field.name())) {
+                throw new IllegalArgumentException("column " + field.name() + " does not exist");
+            }
+            Type type = fileSchema.getType(field.name());
+            if (!type.isPrimitive() || type.isRepetition(Type.Repetition.REPEATED)) {
+                throw new IllegalArgumentException("column " + field.name() + " is not a flat primitive column");
+            }
+            types.add(type);
+        }
+        this.projection = new MessageType(fileSchema.getName(), types);
+        this.createdBy = reader.getFooter().getFileMetaData().getCreatedBy();
+        this.converter = new GroupConverter() {
+            @Override
+            public Converter getConverter(int fieldIndex) {
+                return NOOP_CONVERTER;
+            }
+
+            @Override
+            public void start() {
+            }
+
+            @Override
+            public void end() {
+            }
+        };
+        reader.setRequestedSchema(projection);
+    }
+
+    /**
+     * Returns the columns of the next row group, or null if all the row groups have been read.
+     */
+    public ColumnBatch readNext() throws IOException {
+        PageReadStore pages = reader.readNextRowGroup();
+        if (pages == null) {
+            return null;
+        }
+        int rowCount = Math.toIntExact(pages.getRowCount());
+        ColumnReadStoreImpl store = new ColumnReadStoreImpl(pages, converter, projection, createdBy);
+        List<ColumnVector> vectors = new ArrayList<>(projection.getFieldCount());
+        for (ColumnDescriptor column : projection.getColumns()) {
+            vectors.add(readColumn(column, store.getColumnReader(column), rowCount));
+        }
+        return new ColumnBatch(rowCount, vectors);
+    }
+
+    private static ColumnVector readColumn(ColumnDescriptor column, ColumnReader reader, int rowCount) {
+        String name = column.getPath()[0];
+        int maxDefinitionLevel = column.getMaxDefinitionLevel();
+        BitSet nulls = new BitSet();
+        PrimitiveType.PrimitiveTypeName typeName = column.getPrimitiveType().getPrimitiveTypeName();
+        switch (typeName) {
+            case INT32: {
+                int[] values = new int[rowCount];
+                for (int i = 0; i < rowCount; i++, reader.consume()) {
+                    if (reader.getCurrentDefinitionLevel() < maxDefinitionLevel) {
+                        nulls.set(i);
+                    } else {
+                        values[i] = reader.getInteger();
+                    }
+                }
+                return new ColumnVector(name, Schema.Type.INT, rowCount, values, nulls);
+            }
+            case INT64: {
+                long[] values = new long[rowCount];
+                for (int i = 0; i < rowCount; i++, reader.consume()) {
+                    if (reader.getCurrentDefinitionLevel() < maxDefinitionLevel) {
+                        nulls.set(i);
+                    } else {
+                        values[i] = reader.getLong();
+                    }
+                }
+                return new ColumnVector(name, Schema.Type.LONG, rowCount, values, nulls);
+            }
+            case FLOAT: {
+                float[] values = new float[rowCount];
+                for (int i = 0; i < rowCount; i++, reader.consume()) {
+                    if (reader.getCurrentDefinitionLevel() < maxDefinitionLevel) {
+                        nulls.set(i);
+                    } else {
+                        values[i] = reader.getFloat();
+                    }
+                }
+                return new ColumnVector(name, Schema.Type.FLOAT, rowCount, values, nulls);
+            }
+            case DOUBLE: {
+                double[] values = new double[rowCount];
+                for (int i = 0; i < rowCount; i++, reader.consume()) {
+                    if (reader.getCurrentDefinitionLevel() < maxDefinitionLevel) {
+                        nulls.set(i);
+                    } else {
+                        values[i] = reader.getDouble();
+                    }
+                }
+                return new ColumnVector(name, Schema.Type.DOUBLE, rowCount, values, nulls);
+            }
+            case BOOLEAN: {
+                boolean[] values = new boolean[rowCount];
+                for (int i = 0; i < rowCount; i++, reader.consume()) {
+                    if (reader.getCurrentDefinitionLevel() < maxDefinitionLevel) {
+                        nulls.set(i);
+                    } else {
+                        values[i] = reader.getBoolean();
+                    }
+                }
+                return new ColumnVector(name, Schema.Type.BOOLEAN, rowCount, values, nulls);
+            }
+            case BINARY:
+            case FIXED_LEN_BYTE_ARRAY: {
+                byte[][] values = new byte[rowCount][];
+                for (int i = 0; i < rowCount; i++, reader.consume()) {
+                    if (reader.getCurrentDefinitionLevel() < maxDefinitionLevel) {
+                        nulls.set(i);
+                    } else {
+                        // Dictionary values share their bytes, which is fine since the arrays are read only.
+                        Binary binary = reader.getBinary();
+                        values[i] = binary.copy().getBytes();
+                    }
+                }
+                return new ColumnVector(name, Schema.Type.BYTES, rowCount, values, nulls);
+            }
+            default:
+                throw new IllegalArgumentException("unsupported type " + typeName + " for column " + name);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+}
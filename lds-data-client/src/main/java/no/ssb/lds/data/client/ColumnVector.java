@@ -0,0 +1,105 @@
+package no.ssb.lds.data.client;
+
+import org.apache.avro.Schema;
+
+import java.nio.charset.StandardCharsets;
+import java.util.BitSet;
+import java.util.Objects;
+
+/**
+ * The values of one column of a {@link ColumnBatch}.
+ * <p>
+ * The values are kept in a primitive array that matches the type of the column: int[] for INT, long[] for LONG,
+ * float[] for FLOAT, double[] for DOUBLE, boolean[] for BOOLEAN and byte[][] for BYTES (strings and binaries). The
+ * positions of the null values are kept in a separate bitmap; the array holds the default value of its type at
+ * these positions.
+ */
+public class ColumnVector {
+
+    private final String name;
+    private final Schema.Type type;
+    private final int size;
+    private final Object values;
+    private final BitSet nulls;
+
+    ColumnVector(String name, Schema.Type type, int size, Object values, BitSet nulls) {
+        this.name = Objects.requireNonNull(name);
+        this.type = Objects.requireNonNull(type);
+        this.size = size;
+        this.values = Objects.requireNonNull(values);
+        this.nulls = Objects.requireNonNull(nulls);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * The type of the values, one of INT, LONG, FLOAT, DOUBLE, BOOLEAN or BYTES.
+     */
+    public Schema.Type getType() {
+        return type;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public boolean isNull(int index) {
+        Objects.checkIndex(index, size);
+        return nulls.get(index);
+    }
+
+    /**
+     * Returns true if the column contains at least one null value.
+     */
+    public boolean hasNulls() {
+        return !nulls.isEmpty();
+    }
+
+    /**
+     * The positions of the null values. The returned bitmap must not be modified.
+     */
+    public BitSet getNulls() {
+        return nulls;
+    }
+
+    public int[] getInts() {
+        return values(Schema.Type.INT, int[].class);
+    }
+
+    public long[] getLongs() {
+        return values(Schema.Type.LONG, long[].class);
+    }
+
+    public float[] getFloats() {
+        return values(Schema.Type.FLOAT, float[].class);
+    }
+
+    public double[] getDoubles() {
+        return values(Schema.Type.DOUBLE, double[].class);
+    }
+
+    public boolean[] getBooleans() {
+        return values(Schema.Type.BOOLEAN, boolean[].class);
+    }
+
+    public byte[][] getBinaries() {
+        return values(Schema.Type.BYTES, byte[][].class);
+    }
+
+    /**
+     * Returns the value at index decoded as an UTF-8 string, or null.
+     */
+    public String getString(int index) {
+        byte[] value = getBinaries()[index];
+        return value == null ? null : new String(value, StandardCharsets.UTF_8);
+    }
+
+    private <T> T values(Schema.Type expected, Class<T> arrayType) {
+        if (type != expected) {
+            throw new IllegalStateException("column " + name + " is of type " + type + ", not " + expected);
+        }
+        return arrayType.cast(values);
+    }
+}
@@ -1,22 +1,33 @@
 package no.ssb.lds.data.client;
 
 import io.reactivex.Completable;
+import io.reactivex.Emitter;
 import io.reactivex.Flowable;
 import io.reactivex.Observable;
+import io.reactivex.Scheduler;
+import io.reactivex.schedulers.Schedulers;
 import no.ssb.lds.data.client.converters.FormatConverter;
 import org.apache.avro.Schema;
+import org.apache.avro.generic.GenericData;
 import org.apache.avro.generic.GenericRecord;
 import org.apache.parquet.filter2.compat.FilterCompat;
-import org.apache.parquet.hadoop.ParquetFileReader;
+import org.apache.parquet.hadoop.ParquetReader;
 import org.apache.parquet.hadoop.ParquetWriter;
+import org.apache.parquet.hadoop.metadata.BlockMetaData;
+import org.apache.parquet.hadoop.metadata.FileMetaData;
 import org.apache.parquet.hadoop.metadata.ParquetMetadata;
 
+import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.nio.channels.SeekableByteChannel;
 import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Supplier;
@@ -30,16 +41,20 @@ import java.util.function.Supplier;
  */
 public class DataClient {
 
+    private static final String TMP_SUFFIX = ".tmp";
+
     private final BinaryBackend backend;
     private final List<FormatConverter> converters;
     private final ParquetProvider provider;
     private final Configuration configuration;
+    private final Scheduler readScheduler;
 
     private DataClient(Builder builder) {
         this.backend = Objects.requireNonNull(builder.binaryBackend);
         this.converters = Objects.requireNonNull(builder.converters);
         this.provider = Objects.requireNonNull(builder.parquetProvider);
         this.configuration = Objects.requireNonNull(builder.configuration);
+        this.readScheduler = Objects.requireNonNull(builder.readScheduler);
     }
 
     public static Builder builder() {
@@ -101,9 +116,29 @@ public class DataClient {
 
     public Completable readAndConvert(String dataId, Schema schema, OutputStream outputStream,
                                       String mediaType, String token, Cursor<Long> cursor) throws UnsupportedMediaTypeException {
+        return readAndConvert(dataId, schema, outputStream, mediaType, token, cursor, null);
+    }
+
+    /**
+     * Read filtered data and convert to binary data.
+     *
+     * @param dataId       an opaque identifier for the data.
+     * @param schema       the schema used to parse the data.
+     * @param outputStream the output stream to read the data into.
+     * @param mediaType    the media type of the binary data.
+     * @param token        an authentication token.
+     * @param cursor       a cursor on record number, can be null.
+     * @param filter       a filter on the records, can be null.
+     * @return a completable that completes once the data is read.
+     * @throws UnsupportedMediaTypeException if the client does not support the media type.
+     */
+    public Completable readAndConvert(String dataId, Schema schema, OutputStream outputStream, String mediaType,
+                                      String token, Cursor<Long> cursor, RowFilter filter)
+            throws UnsupportedMediaTypeException {
         for (FormatConverter converter : converters) {
             if (converter.doesSupport(mediaType)) {
-                Flowable<GenericRecord> records = readData(dataId, schema, token, cursor);
+                Flowable<GenericRecord> records = readData(dataId, schema, token, cursor, filter,
+                        converter.acceptsReusedRecords());
                 return converter.write(records, outputStream, mediaType, schema);
             }
         }
@@ -115,6 +150,9 @@ public class DataClient {
      * <p>
      * The records will be written in "batches" of size count or when the timespan duration elapsed. The last value of
      * each batch is returned in an {@link Observable}.
+     * <p>
+     * If the supplied ids share a "directory" (ie. dataset/01D3..., dataset/01D4...), the batches can be read back
+     * together as one multi-file dataset by reading the directory (dataset).
      *
      * @param idSupplier  a supplier for the id called each time a file is flushed.
      * @param records     the records to write.
@@ -175,63 +213,459 @@ public class DataClient {
      * @throws IOException if any I/O errors occurs.
      */
     public DataWriter writeData(String dataId, Schema schema, String token) throws IOException {
-        return new DataWriter(dataId, schema);
+        boolean parts = configuration.getPartMaxRecords() != null || configuration.getPartMaxBytes() != null;
+        return new DataWriter(configuration.getLocation() + dataId, schema, parts);
+    }
+
+    /**
+     * Write a sequence of {@link GenericRecord}s partitioned by the values of some columns.
+     * <p>
+     * The records are written in hive style directories, ie. dataId/year=2019/region=03/part-00000.parquet. Reads
+     * with a filter on the partition columns only open the matching directories.
+     *
+     * @param dataId           an opaque identifier for the data.
+     * @param schema           the schema used to create the records.
+     * @param partitionColumns the columns to partition by, in directory order.
+     * @param records          the records to write.
+     * @param token            an authentication token.
+     * @return a completable that completes once the data is saved.
+     * @see PartitionedDataWriter
+     */
+    public Completable writeAllData(String dataId, Schema schema, List<String> partitionColumns,
+                                    Flowable<GenericRecord> records, String token) {
+        return Flowable.defer(() -> {
+            PartitionedDataWriter writer = writePartitionedData(dataId, schema, partitionColumns, token);
+            return records.doAfterNext(writer::save)
+                    .doOnComplete(writer::close)
+                    .doOnError(throwable -> writer.cancel());
+        }).ignoreElements();
+    }
+
+    /**
+     * Create a {@link PartitionedDataWriter}.
+     *
+     * @param dataId           an opaque identifier for the data.
+     * @param schema           the schema used to create the records.
+     * @param partitionColumns the columns to partition by, in directory order.
+     * @param token            an authentication token.
+     * @return an instance of {@link PartitionedDataWriter} ready to accept records.
+     */
+    public PartitionedDataWriter writePartitionedData(String dataId, Schema schema, List<String> partitionColumns,
+                                                      String token) {
+        return new PartitionedDataWriter(configuration.getLocation() + dataId, schema, partitionColumns);
     }
 
     /**
      * Read a sequence of {@link GenericRecord}s from the bucket storage.
      *
      * @param dataId the identifier for the data.
-     * @param schema the schema used to create the records.
+     * @param schema the schema used to create the records. Only the fields of the schema are read, it can be a
+     *               subset of the schema the data was written with.
      * @param token  an authentication token.
      * @param cursor a cursor on record number.
      * @return a {@link Flowable} of records.
      */
     public Flowable<GenericRecord> readData(String dataId, Schema schema, String token, Cursor<Long> cursor) {
+        return readData(dataId, schema, token, cursor, null);
+    }
+
+    /**
+     * Read a filtered sequence of {@link GenericRecord}s from the bucket storage.
+     * <p>
+     * The filter is pushed down to parquet; row groups are skipped using the column statistics and dictionaries
+     * before records are read. The columns used in the filter must be part of the schema. When used with a filter
+     * the cursor positions refer to the matching records.
+     *
+     * @param dataId the identifier for the data.
+     * @param schema the schema used to create the records. Only the fields of the schema are read, it can be a
+     *               subset of the schema the data was written with.
+     * @param token  an authentication token.
+     * @param cursor a cursor on record number, can be null.
+     * @param filter a filter on the records, can be null.
+     * @return a {@link Flowable} of records.
+     */
+    public Flowable<GenericRecord> readData(String dataId, Schema schema, String token, Cursor<Long> cursor,
+                                            RowFilter filter) {
+        return readData(dataId, schema, token, cursor, filter, false);
+    }
+
+    /**
+     * Read a filtered sequence of {@link GenericRecord}s from the bucket storage, optionally reusing the records.
+     * <p>
+     * When reuseRecords is true the same record instance is emitted for every row; its fields are overwritten when
+     * the next record is read. A record is only valid until the consumer returns from onNext; it must not be kept,
+     * buffered or passed to another thread (ie. no buffer(), toList() or observeOn()). Use {@link
+     * GenericData#deepCopy(Schema, Object)} to keep a record. The values of the fields (strings, nested records,
+     * arrays and maps) are not reused and can be kept. In this mode the files of multi-file datasets are read one
+     * after the other instead of in parallel.
+     *
+     * @param dataId       the identifier for the data.
+     * @param schema       the schema used to create the records.
+     * @param token        an authentication token.
+     * @param cursor       a cursor on record number, can be null.
+     * @param filter       a filter on the records, can be null.
+     * @param reuseRecords whether to emit the same record instance for every row.
+     * @return a {@link Flowable} of records.
+     */
+    public Flowable<GenericRecord> readData(String dataId, Schema schema, String token, Cursor<Long> cursor,
+                                            RowFilter filter, boolean reuseRecords) {
         // TODO: Do something with token.
-        // TODO: Handle projection.
-        // TODO: Handle filtering.
-        if (cursor != null) {
+        if (filter != null) {
+            Flowable<GenericRecord> records = readRecords(dataId, schema, filter, reuseRecords);
+            if (cursor != null) {
+                // The statistics cannot be used to find the page; skip the matching records.
+                long start = Math.max(cursor.getAfter(), 0);
+                int size = Math.max(cursor.getNext(), 0);
+                return records.skip(Math.max(start - 1, 0)).limit(size);
+            }
+            return records;
+        } else if (cursor != null) {
             // Convert to pos + size
             long start = Math.max(cursor.getAfter(), 0);
             int size = Math.max(cursor.getNext(), 0);
-            // Note the size + 1 here. The filter implementation goes through all the groups unless
-            // we return one extra and limit with actual size. This will probably be fixed by parquet team at some
-            // point.
-            FilterCompat.Filter filter = FilterCompat.get(new PagedRecordFilter(start, start + size + 1));
-            return readRecords(dataId, schema, filter).limit(size);
+            // Positions start at 1 and after is inclusive.
+            long offset = Math.max(start - 1, 0);
+            return Flowable.defer(() -> readPage(dataId, schema, offset, size, reuseRecords));
         } else {
-            return readRecords(dataId, schema, FilterCompat.NOOP);
+            return readRecords(dataId, schema, null, reuseRecords);
         }
     }
 
-    private Flowable<GenericRecord> readRecords(String dataId, Schema schema, FilterCompat.Filter filter) {
-        return Flowable.generate(() -> {
-            SeekableByteChannel readableChannel = backend.read(configuration.getLocation() + dataId);
-            return provider.getReader(readableChannel, schema, filter);
-        }, (parquetReader, emitter) -> {
-            GenericRecord read = parquetReader.read();
-            if (read == null) {
-                emitter.onComplete();
+    /**
+     * Read size records starting at offset.
+     * <p>
+     * The row counts in the footers are used to find the files and row groups that contain the page. Only these row
+     * groups are opened and the filter only has to skip the records of the first one.
+     */
+    private Flowable<GenericRecord> readPage(String dataId, Schema schema, long offset, int size,
+                                             boolean reuseRecords) throws IOException {
+        if (size == 0) {
+            return Flowable.empty();
+        }
+        List<Flowable<GenericRecord>> ranges = new ArrayList<>();
+        long rowStart = 0;
+        for (DataFile file : listFiles(dataId, schema, null)) {
+            if (rowStart >= offset + size) {
+                break;
+            }
+            BlockMetaData first = null;
+            BlockMetaData last = null;
+            long firstRow = 0;
+            for (BlockMetaData block : readFooter(file).getBlocks()) {
+                long rowEnd = rowStart + block.getRowCount();
+                if (rowEnd > offset && rowStart < offset + size) {
+                    if (first == null) {
+                        first = block;
+                        firstRow = rowStart;
+                    }
+                    last = block;
+                }
+                rowStart = rowEnd;
+            }
+            if (first != null) {
+                long skip = Math.max(offset - firstRow, 0);
+                FilterCompat.Filter filter = FilterCompat.get(new PagedRecordFilter(skip + 1, skip + 1 + size));
+                long start = first.getStartingPos();
+                long end = last.getStartingPos() + last.getCompressedSize();
+                ranges.add(readRange(file, schema, filter, start, end, reuseRecords));
+            }
+        }
+        return Flowable.concat(ranges).limit(size);
+    }
+
+    /**
+     * Read a sequence of {@link GenericRecord}s from the bucket storage using several readers in parallel.
+     * <p>
+     * The files are split on row group boundaries using the footers. Each split is read with its own reader and
+     * channel on the read scheduler, with at most {@link Configuration#getReadParallelism()} splits read
+     * concurrently. When ordered is true the records are emitted in file order; the splits are still decoded
+     * concurrently but buffered until their turn. Otherwise records are emitted as soon as they are decoded.
+     *
+     * @param dataId  the identifier for the data.
+     * @param schema  the schema used to create the records.
+     * @param token   an authentication token.
+     * @param filter  a filter on the records, can be null.
+     * @param ordered whether the records must be emitted in file order.
+     * @return a {@link Flowable} of records.
+     */
+    public Flowable<GenericRecord> readDataParallel(String dataId, Schema schema, String token, RowFilter filter,
+                                                    boolean ordered) {
+        int parallelism = configuration.getReadParallelism();
+        return Flowable.defer(() -> {
+            FilterCompat.Filter parquetFilter = filter == null
+                    ? FilterCompat.NOOP
+                    : FilterCompat.get(filter.toPredicate(schema));
+            List<Flowable<GenericRecord>> splits = new ArrayList<>();
+            for (DataFile file : listFiles(dataId, schema, filter)) {
+                List<BlockMetaData> blocks = readFooter(file).getBlocks();
+                // A few splits per reader so that row groups of uneven size are balanced.
+                int splitCount = Math.min(blocks.size(), parallelism * 4);
+                for (int i = 0; i < splitCount; i++) {
+                    BlockMetaData first = blocks.get(i * blocks.size() / splitCount);
+                    BlockMetaData last = blocks.get((i + 1) * blocks.size() / splitCount - 1);
+                    long start = first.getStartingPos();
+                    long end = last.getStartingPos() + last.getCompressedSize();
+                    splits.add(readRange(file, schema, parquetFilter, start, end, false)
+                            .subscribeOn(readScheduler));
+                }
+            }
+            if (ordered) {
+                return Flowable.concatEager(splits, parallelism, Flowable.bufferSize());
             } else {
-                emitter.onNext(read);
+                return Flowable.merge(splits, parallelism);
+            }
+        });
+    }
+
+    private Flowable<GenericRecord> readRange(DataFile file, Schema schema, FilterCompat.Filter filter,
+                                              long start, long end, boolean reuseRecords) {
+        return Flowable.generate(() -> {
+            SeekableByteChannel readableChannel = openChannel(file, schema);
+            return provider.getReader(readableChannel, schema, filter, start, end, reuseRecords);
+        }, DataClient::emitNext, ParquetReader::close);
+    }
+
+    /**
+     * Read all the records, reading the files of multi-file datasets in parallel unless the records are reused.
+     */
+    private Flowable<GenericRecord> readRecords(String dataId, Schema schema, RowFilter filter,
+                                                boolean reuseRecords) {
+        return Flowable.defer(() -> {
+            FilterCompat.Filter parquetFilter = filter == null
+                    ? FilterCompat.NOOP
+                    : FilterCompat.get(filter.toPredicate(schema));
+            List<DataFile> files = listFiles(dataId, schema, filter);
+            if (files.size() == 1) {
+                return readFile(files.get(0), schema, parquetFilter, reuseRecords);
+            }
+            List<Flowable<GenericRecord>> parts = new ArrayList<>(files.size());
+            if (reuseRecords) {
+                // Reading ahead would buffer records that are overwritten.
+                for (DataFile file : files) {
+                    parts.add(readFile(file, schema, parquetFilter, true));
+                }
+                return Flowable.concat(parts);
+            }
+            for (DataFile file : files) {
+                parts.add(readFile(file, schema, parquetFilter, false).subscribeOn(readScheduler));
             }
-        }, parquetReader -> {
+            return Flowable.concatEager(parts, configuration.getReadParallelism(), Flowable.bufferSize());
+        });
+    }
+
+    private Flowable<GenericRecord> readFile(DataFile file, Schema schema, FilterCompat.Filter filter,
+                                             boolean reuseRecords) {
+        return Flowable.generate(() -> {
+            SeekableByteChannel readableChannel = openChannel(file, schema);
+            return provider.getReader(readableChannel, schema, filter, reuseRecords);
+        }, DataClient::emitNext, parquetReader -> {
             parquetReader.close();
         });
     }
 
-    public ParquetMetadata readMetadata(String dataId, String token) throws IOException {
+    /**
+     * Read the data column by column, one {@link ColumnBatch} per row group.
+     * <p>
+     * The values are decoded into primitive arrays without creating a record per row, which is much cheaper for
+     * scans and aggregations over a few columns. Only flat schemas with primitive fields are supported. The filter
+     * prunes partitions and row groups using the statistics and dictionaries but the rows of the batches are not
+     * filtered; the caller has to apply the predicate to the vectors.
+     *
+     * @param dataId the identifier for the data.
+     * @param schema the fields to read. Only primitive fields and nullable primitive fields are supported.
+     * @param token  an authentication token.
+     * @param filter a filter used to skip row groups, can be null.
+     * @return a {@link Flowable} of batches, in file order.
+     */
+    public Flowable<ColumnBatch> readColumns(String dataId, Schema schema, String token, RowFilter filter) {
+        // TODO: Do something with token.
+        return Flowable.defer(() -> {
+            FilterCompat.Filter parquetFilter = filter == null
+                    ? FilterCompat.NOOP
+                    : FilterCompat.get(filter.toPredicate(schema));
+            List<Flowable<ColumnBatch>> files = new ArrayList<>();
+            for (DataFile file : listFiles(dataId, schema, filter)) {
+                files.add(readFileColumns(file, schema, parquetFilter));
+            }
+            return Flowable.concat(files);
+        });
+    }
+
+    private Flowable<ColumnBatch> readFileColumns(DataFile file, Schema schema, FilterCompat.Filter filter) {
+        return Flowable.generate(() -> {
+            SeekableByteChannel readableChannel = openChannel(file, schema);
+            return provider.getColumnReader(readableChannel, schema, filter);
+        }, (reader, emitter) -> {
+            ColumnBatch batch = reader.readNext();
+            if (batch == null) {
+                emitter.onComplete();
+            } else {
+                emitter.onNext(batch);
+            }
+        }, ColumnBatchReader::close);
+    }
+
+    /**
+     * Returns the files of the data.
+     * <p>
+     * Data is either a single file or a multi-file dataset, a "directory" containing one file per part. The parts
+     * are returned in name order. Files still being written (.tmp) are ignored.
+     * <p>
+     * Parts in hive style partition directories (column=value/) that cannot match the filter are pruned. The
+     * versions of the parts come with the listing.
+     */
+    private List<DataFile> listFiles(String dataId, Schema schema, RowFilter filter) throws IOException {
         String path = configuration.getLocation() + dataId;
-        try (SeekableByteChannel channel = backend.read(path)) {
-            ParquetFileReader parquetFileReader = provider.getMetadata(channel);
-            return parquetFileReader.getFooter();
+        Flowable<VersionedPath> listing = backend.listVersions(path + "/");
+        List<DataFile> files = listing == null ? new ArrayList<>() : listing
+                .filter(part -> !part.getPath().endsWith(TMP_SUFFIX))
+                .map(part -> new DataFile(part.getPath(), part.getVersion()))
+                .sorted(Comparator.comparing(file -> file.path))
+                .toList().blockingGet();
+        if (files.isEmpty()) {
+            files.add(new DataFile(path, backend.version(path)));
+        } else if (filter != null) {
+            files.removeIf(part -> Boolean.FALSE.equals(
+                    filter.evaluate(Partitions.parse(part.path.substring(path.length() + 1)), schema)
+            ));
+        }
+        return files;
+    }
+
+    /**
+     * Returns the files under the "directory" of the data in name order, ignoring the files being written.
+     */
+    private List<String> listParts(String path) throws IOException {
+        Flowable<String> listing = backend.list(path + "/");
+        if (listing == null) {
+            return new ArrayList<>();
+        }
+        return listing.filter(part -> !part.endsWith(TMP_SUFFIX)).sorted().toList().blockingGet();
+    }
+
+    /**
+     * Moves the staged files (temporary path to path) in place and removes what is left of the data previously
+     * written to the path.
+     * <p>
+     * Data is either a single file or parts under the path, and parts take precedence. A single file is moved
+     * once the previous parts are deleted. Parts are moved once the previous single file is deleted and the
+     * previous parts that were not overwritten are deleted last. Readers see the previous data until the first
+     * move; an interrupted publication leaves a mix of both.
+     */
+    private void publish(String path, Map<String, String> staged) throws IOException {
+        if (staged.containsValue(path)) {
+            for (String part : listParts(path)) {
+                backend.delete(part);
+            }
+            moveAll(staged);
+        } else {
+            try {
+                backend.delete(path);
+            } catch (FileNotFoundException fnfe) {
+                // No previous single file.
+            }
+            moveAll(staged);
+            for (String part : listParts(path)) {
+                if (!staged.containsValue(part)) {
+                    backend.delete(part);
+                }
+            }
+        }
+    }
+
+    private void moveAll(Map<String, String> staged) throws IOException {
+        for (Map.Entry<String, String> file : staged.entrySet()) {
+            backend.move(file.getKey(), file.getValue());
+        }
+    }
+
+    /**
+     * Opens a channel on the file for a reader, fetching the row groups in batches when configured.
+     */
+    private SeekableByteChannel openChannel(DataFile file, Schema schema) throws IOException {
+        if (!Boolean.TRUE.equals(configuration.getPrefetchRowGroups())) {
+            return provider.withCachedFooter(file.key, backend.read(file.path, file.version));
+        }
+        // Reading the footer closes its channel.
+        ParquetMetadata footer = readFooter(file);
+        SeekableByteChannel channel = provider.withCachedFooter(file.key, backend.read(file.path, file.version));
+        return provider.withRowGroupPrefetch(channel, footer, schema, backend, file.path, file.version);
+    }
+
+    /**
+     * Returns the footer of the file, only opening it if the footer is not cached.
+     */
+    private ParquetMetadata readFooter(DataFile file) throws IOException {
+        ParquetMetadata cached = provider.getCachedFooter(file.key);
+        if (cached != null) {
+            return cached;
+        }
+        try (SeekableByteChannel channel = backend.read(file.path, file.version)) {
+            return provider.getFooter(file.key, channel);
+        }
+    }
+
+    private static void emitNext(ParquetReader<GenericRecord> parquetReader, Emitter<GenericRecord> emitter)
+            throws IOException {
+        GenericRecord read = parquetReader.read();
+        if (read == null) {
+            emitter.onComplete();
+        } else {
+            emitter.onNext(read);
+        }
+    }
+
+    /**
+     * Read the parquet metadata of the data.
+     * <p>
+     * The metadata is cached by the {@link ParquetProvider} when the backend supports versions. For multi-file
+     * datasets the row groups of all the parts are returned, in part order, with the file metadata of the first one.
+     *
+     * @param dataId the identifier for the data.
+     * @param token  an authentication token.
+     * @return the metadata found in the footer of the file.
+     * @throws IOException if any I/O errors occurs.
+     */
+    public ParquetMetadata readMetadata(String dataId, String token) throws IOException {
+        List<DataFile> files = listFiles(dataId, null, null);
+        if (files.size() == 1) {
+            return readFooter(files.get(0));
+        }
+        FileMetaData fileMetaData = null;
+        List<BlockMetaData> blocks = new ArrayList<>();
+        for (DataFile file : files) {
+            ParquetMetadata footer = readFooter(file);
+            if (fileMetaData == null) {
+                fileMetaData = footer.getFileMetaData();
+            }
+            blocks.addAll(footer.getBlocks());
+        }
+        return new ParquetMetadata(fileMetaData, blocks);
+    }
+
+    private static class DataFile {
+
+        private final String path;
+        // The version of the file when it was listed, opened with BinaryBackend.read(path, version) so that the
+        // bytes match the footer cached under the key. Null if the backend does not version its files.
+        private final String version;
+        private final String key;
+
+        private DataFile(String path, String version) {
+            this.path = path;
+            this.version = version;
+            this.key = version == null ? null : path + "@" + version;
         }
     }
 
     public static class Configuration {
 
         private String location;
+        private Integer readParallelism = Runtime.getRuntime().availableProcessors();
+        private Long partMaxRecords;
+        private Long partMaxBytes;
+        private Boolean prefetchRowGroups = false;
+        private Integer partitionMaxOpenWriters = 16;
 
         public Configuration() {
         }
@@ -243,6 +677,63 @@ public class DataClient {
         public void setLocation(String location) {
             this.location = location;
         }
+
+        public Integer getReadParallelism() {
+            return readParallelism;
+        }
+
+        public void setReadParallelism(Integer readParallelism) {
+            this.readParallelism = readParallelism;
+        }
+
+        /**
+         * The maximum number of records per part. When this or {@link #getPartMaxBytes()} is set the data is
+         * written as a multi-file dataset.
+         */
+        public Long getPartMaxRecords() {
+            return partMaxRecords;
+        }
+
+        public void setPartMaxRecords(Long partMaxRecords) {
+            this.partMaxRecords = partMaxRecords;
+        }
+
+        /**
+         * The approximate maximum size of each part in bytes. When this or {@link #getPartMaxRecords()} is set the
+         * data is written as a multi-file dataset.
+         */
+        public Long getPartMaxBytes() {
+            return partMaxBytes;
+        }
+
+        public void setPartMaxBytes(Long partMaxBytes) {
+            this.partMaxBytes = partMaxBytes;
+        }
+
+        /**
+         * Whether the column chunks of each row group are fetched in one batch with
+         * {@link BinaryBackend#readRanges(String, List)} instead of one read per chunk. Useful with remote backends
+         * where each read is a request; the chunks of a row group are kept in memory while it is read.
+         */
+        public Boolean getPrefetchRowGroups() {
+            return prefetchRowGroups;
+        }
+
+        public void setPrefetchRowGroups(Boolean prefetchRowGroups) {
+            this.prefetchRowGroups = prefetchRowGroups;
+        }
+
+        /**
+         * The maximum number of partitions a {@link PartitionedDataWriter} keeps an open file (and its parquet
+         * buffers) for. Defaults to 16.
+         */
+        public Integer getPartitionMaxOpenWriters() {
+            return partitionMaxOpenWriters;
+        }
+
+        public void setPartitionMaxOpenWriters(Integer partitionMaxOpenWriters) {
+            this.partitionMaxOpenWriters = partitionMaxOpenWriters;
+        }
     }
 
     public static class Builder {
@@ -251,7 +742,7 @@ public class DataClient {
         private BinaryBackend binaryBackend;
         private List<FormatConverter> converters = new ArrayList<>();
         private Configuration configuration;
-
+        private Scheduler readScheduler = Schedulers.io();
 
         public Builder withParquetProvider(ParquetProvider parquetProvider) {
             this.parquetProvider = parquetProvider;
@@ -278,6 +769,14 @@ public class DataClient {
             return this;
         }
 
+        /**
+         * Set the scheduler used by the parallel readers. Note that the readers block on I/O.
+         */
+        public Builder withReadScheduler(Scheduler readScheduler) {
+            this.readScheduler = readScheduler;
+            return this;
+        }
+
         public DataClient build() {
             return new DataClient(this);
         }
@@ -286,18 +785,62 @@ public class DataClient {
 
     /**
      * Writer abstraction.
+     * <p>
+     * When the configuration limits the size of the parts, the records are written to a multi-file dataset; a new
+     * part file is started whenever the current one is full. The files are staged next to the data and replace
+     * the data previously written to the same path when the writer is closed.
      */
     public class DataWriter implements AutoCloseable {
-        private final String tmpPath;
         private final String path;
-        private final ParquetWriter<GenericRecord> parquetWriter;
+        private final Schema schema;
+        private final boolean partitioned;
+        // Temporary path -> path of all the files written so far.
+        private final Map<String, String> staged = new LinkedHashMap<>();
+        private ParquetWriter<GenericRecord> parquetWriter;
+        private long partRecords;
 
+        private DataWriter(String path, Schema schema, boolean partitioned) throws IOException {
+            this.path = path;
+            this.schema = schema;
+            this.partitioned = partitioned;
+            open();
+        }
 
-        private DataWriter(String datasetId, Schema schema) throws IOException {
-            path = configuration.getLocation() + datasetId;
-            tmpPath = path + ".tmp";
+        private void open() throws IOException {
+            String currentPath;
+            String tmpPath;
+            if (partitioned) {
+                // Outside of the directory so that the previous parts can be read until the writer is closed.
+                currentPath = String.format("%s/part-%05d.parquet", path, staged.size());
+                tmpPath = String.format("%s.part-%05d.parquet%s", path, staged.size(), TMP_SUFFIX);
+            } else {
+                currentPath = path;
+                tmpPath = path + TMP_SUFFIX;
+            }
             SeekableByteChannel channel = backend.write(tmpPath);
+            staged.put(tmpPath, currentPath);
             parquetWriter = provider.getWriter(channel, schema);
+            partRecords = 0;
+        }
+
+        private boolean isPartFull() {
+            Long maxRecords = configuration.getPartMaxRecords();
+            Long maxBytes = configuration.getPartMaxBytes();
+            return (maxRecords != null && partRecords >= maxRecords)
+                    || (maxBytes != null && parquetWriter.getDataSize() >= maxBytes);
+        }
+
+        /**
+         * Close the current part, if any. The next record starts a new part.
+         */
+        private void finishPart() throws IOException {
+            if (parquetWriter != null) {
+                try {
+                    parquetWriter.close();
+                } finally {
+                    parquetWriter = null;
+                }
+            }
         }
 
         /**
@@ -309,25 +852,57 @@ public class DataClient {
          * @param record the record to save.
          */
         public void save(GenericRecord record) throws IOException {
+            if (parquetWriter == null) {
+                open();
+            } else if (partitioned && isPartFull()) {
+                finishPart();
+                open();
+            }
             parquetWriter.write(record);
+            partRecords++;
         }
 
+        /**
+         * Discard the records and delete the temporary files. The data previously written to the path is kept.
+         */
         public void cancel() throws IOException {
+            IOException exception = null;
             try {
-                parquetWriter.close();
-            } finally {
-                backend.delete(tmpPath);
+                finishPart();
+            } catch (IOException ioe) {
+                exception = ioe;
+            }
+            for (String tmpPath : staged.keySet()) {
+                try {
+                    backend.delete(tmpPath);
+                } catch (IOException ioe) {
+                    if (exception == null) {
+                        exception = ioe;
+                    } else {
+                        exception.addSuppressed(ioe);
+                    }
+                }
+            }
+            if (exception != null) {
+                throw exception;
             }
         }
 
         /**
-         * Write all buffered records, close the file and rename it.
+         * Write all buffered records, close the files and replace the data previously written to the path.
          */
         @Override
         public void close() throws IOException {
+            finish();
+            publish(path, staged);
+        }
+
+        /**
+         * Close the files, deleting them if it fails.
+         */
+        private void finish() throws IOException {
             try {
-                parquetWriter.close();
-                backend.move(tmpPath, path);
+                finishPart();
             } catch (IOException ioe) {
                 try {
                     cancel();
@@ -338,4 +913,117 @@ public class DataClient {
             }
         }
     }
+
+    /**
+     * Writer that dispatches the records to one {@link DataWriter} per partition.
+     * <p>
+     * The partition columns are kept in the files. At most {@link Configuration#getPartitionMaxOpenWriters()}
+     * partitions have an open file (and its parquet buffers) at a time; when a record belongs to another partition,
+     * the file of the least recently used partition is closed and the partition continues in a new part the next
+     * time it receives a record. Records clustered by partition thus produce one part per partition (or more if the
+     * parts are limited) whereas unsorted records produce many small parts.
+     */
+    public class PartitionedDataWriter implements AutoCloseable {
+
+        private final String path;
+        private final Schema schema;
+        private final List<String> partitionColumns;
+        private final int maxOpenWriters;
+        private final Map<String, DataWriter> writers = new LinkedHashMap<>();
+        // Access ordered, the eldest entry is the least recently used.
+        private final Map<String, DataWriter> openWriters = new LinkedHashMap<>(16, 0.75f, true);
+
+        private PartitionedDataWriter(String path, Schema schema, List<String> partitionColumns) {
+            this.path = path;
+            this.schema = schema;
+            this.partitionColumns = List.copyOf(partitionColumns);
+            this.maxOpenWriters = Math.max(configuration.getPartitionMaxOpenWriters(), 1);
+            for (String column : this.partitionColumns) {
+                if (schema.getField(column) == null) {
+                    throw new IllegalArgumentException("partition column " + column + " is not in the schema");
+                }
+            }
+        }
+
+        /**
+         * Push down a generic record to the writer of its partition.
+         *
+         * @param record the record to save.
+         */
+        public void save(GenericRecord record) throws IOException {
+            String directory = Partitions.directory(partitionColumns, record);
+            DataWriter writer = openWriters.get(directory);
+            if (writer == null) {
+                if (openWriters.size() >= maxOpenWriters) {
+                    Iterator<DataWriter> eldest = openWriters.values().iterator();
+                    DataWriter closed = eldest.next();
+                    eldest.remove();
+                    closed.finishPart();
+                }
+                writer = writers.get(directory);
+                if (writer == null) {
+                    writer = new DataWriter(path + "/" + directory, schema, true);
+                    writers.put(directory, writer);
+                }
+                openWriters.put(directory, writer);
+            }
+            writer.save(record);
+        }
+
+        /**
+         * Discard the records of all the partitions and delete the temporary files.
+         */
+        public void cancel() throws IOException {
+            IOException exception = null;
+            for (DataWriter writer : writers.values()) {
+                try {
+                    writer.cancel();
+                } catch (IOException ioe) {
+                    if (exception == null) {
+                        exception = ioe;
+                    } else {
+                        exception.addSuppressed(ioe);
+                    }
+                }
+            }
+            openWriters.clear();
+            if (exception != null) {
+                throw exception;
+            }
+        }
+
+        /**
+         * Close the writers of all the partitions and replace the data previously written to the path.
+         * <p>
+         * If any of the files cannot be closed, the temporary files of all the partitions are deleted and the
+         * previous data is kept.
+         */
+        @Override
+        public void close() throws IOException {
+            IOException exception = null;
+            Map<String, String> staged = new LinkedHashMap<>();
+            for (DataWriter writer : writers.values()) {
+                try {
+                    writer.finishPart();
+                } catch (IOException ioe) {
+                    if (exception == null) {
+                        exception = ioe;
+                    } else {
+                        exception.addSuppressed(ioe);
+                    }
+                }
+                staged.putAll(writer.staged);
+            }
+            openWriters.clear();
+            if (exception != null) {
+                try {
+                    cancel();
+                } catch (IOException deleteIoe) {
+                    exception.addSuppressed(deleteIoe);
+                }
+                throw exception;
+            }
+            publish(path, staged);
+        }
+    }
 }
@@ -0,0 +1,259 @@
+package no.ssb.lds.data.client;
+
+import org.apache.parquet.column.statistics.Statistics;
+import org.apache.parquet.hadoop.metadata.BlockMetaData;
+import org.apache.parquet.hadoop.metadata.ColumnChunkMetaData;
+import org.apache.parquet.hadoop.metadata.ParquetMetadata;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * LRU cache of parquet footers.
+ * <p>
+ * The cache keeps the raw tail of the files (footer, footer length and magic) so that readers can be opened
+ * without fetching it again, and the parsed {@link ParquetMetadata}. The keys must change when the content of
+ * the file changes; use the path and a version token.
+ * <p>
+ * The size of an entry is the size of the tail plus an estimate of the heap used by the parsed metadata, which
+ * is several times larger than its serialized form.
+ */
+public class FooterCache {
+
+    private static final int TAIL_SIZE = 8;
+    private static final byte[] MAGIC = "PAR1".getBytes(StandardCharsets.US_ASCII);
+
+    // Access ordered, the eldest entry is the least recently used.
+    private final Map<String, Footer> footers = new LinkedHashMap<>(16, 0.75f, true);
+    private final long maxBytes;
+    private long bytes = 0;
+
+    /**
+     * Create a new cache.
+     *
+     * @param maxBytes the maximum size of the cached footers in bytes, including the parsed metadata.
+     */
+    public FooterCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    private static void readFully(SeekableByteChannel input, long position, ByteBuffer buffer) throws IOException {
+        input.position(position);
+        while (buffer.hasRemaining()) {
+            if (input.read(buffer) < 0 && buffer.hasRemaining()) {
+                throw new EOFException("unexpected end of file at " + input.position());
+            }
+        }
+        buffer.flip();
+    }
+
+    /**
+     * Estimates the heap used by the parsed metadata.
+     */
+    static long estimateSize(ParquetMetadata metadata) {
+        // File metadata, schema and key values.
+        long size = 1024;
+        for (BlockMetaData block : metadata.getBlocks()) {
+            size += 128;
+            for (ColumnChunkMetaData column : block.getColumns()) {
+                // Path, encodings, offsets and sizes.
+                size += 256;
+                Statistics<?> statistics = column.getStatistics();
+                if (statistics != null && statistics.hasNonNullValue()) {
+                    size += statistics.getMinBytes().length + statistics.getMaxBytes().length;
+                }
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Returns the footer for the key, or null if it is not cached.
+     */
+    public Footer getIfPresent(String key) {
+        synchronized (footers) {
+            return footers.get(key);
+        }
+    }
+
+    /**
+     * Returns the footer for the key, reading it from the input if it is not cached.
+     */
+    public Footer get(String key, SeekableByteChannel input) throws IOException {
+        Footer footer = getIfPresent(key);
+        if (footer != null) {
+            return footer;
+        }
+
+        long length = input.size();
+        if (length < MAGIC.length + TAIL_SIZE) {
+            throw new IOException("not a parquet file (too small)");
+        }
+        ByteBuffer end = ByteBuffer.allocate(TAIL_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        readFully(input, length - TAIL_SIZE, end);
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (end.get(4 + i) != MAGIC[i]) {
+                throw new IOException("not a parquet file (invalid magic)");
+            }
+        }
+        long tailStart = length - TAIL_SIZE - end.getInt(0);
+        if (tailStart < MAGIC.length) {
+            throw new IOException("not a parquet file (invalid footer length)");
+        }
+        ByteBuffer tail = ByteBuffer.allocate(Math.toIntExact(length - tailStart));
+        readFully(input, tailStart, tail);
+        footer = new Footer(this, key, length, tailStart, tail);
+
+        synchronized (footers) {
+            Footer previous = footers.put(key, footer);
+            if (previous != null) {
+                bytes -= previous.size();
+            }
+            bytes += footer.size();
+            evict();
+        }
+        return footer;
+    }
+
+    // Must hold the lock on footers.
+    private void evict() {
+        Iterator<Footer> eldest = footers.values().iterator();
+        while (bytes > maxBytes && eldest.hasNext()) {
+            bytes -= eldest.next().size();
+            eldest.remove();
+        }
+    }
+
+    /**
+     * A cached footer.
+     */
+    public static class Footer {
+
+        private final FooterCache cache;
+        private final String key;
+        private final long length;
+        private final long tailStart;
+        private final ByteBuffer tail;
+        private volatile ParquetMetadata metadata;
+        private long metadataSize = 0;
+
+        private Footer(FooterCache cache, String key, long length, long tailStart, ByteBuffer tail) {
+            this.cache = cache;
+            this.key = key;
+            this.length = length;
+            this.tailStart = tailStart;
+            this.tail = tail.asReadOnlyBuffer();
+        }
+
+        // Must hold the lock on the footers of the cache.
+        private long size() {
+            return tail.capacity() + metadataSize;
+        }
+
+        public ParquetMetadata getMetadata() {
+            return metadata;
+        }
+
+        /**
+         * Set the parsed metadata, counting its estimated size in the size of the cache.
+         */
+        public void setMetadata(ParquetMetadata metadata) {
+            long size = metadata == null ? 0 : estimateSize(metadata);
+            synchronized (cache.footers) {
+                this.metadata = metadata;
+                if (cache.footers.get(key) == this) {
+                    cache.bytes += size - metadataSize;
+                    metadataSize = size;
+                    cache.evict();
+                } else {
+                    metadataSize = size;
+                }
+            }
+        }
+
+        /**
+         * Returns a channel that reads the footer from memory and the rest from the input.
+         */
+        public SeekableByteChannel wrap(SeekableByteChannel input) {
+            return new TailChannel(input, this);
+        }
+    }
+
+    private static class TailChannel implements SeekableByteChannel {
+
+        private final SeekableByteChannel delegate;
+        private final Footer footer;
+        private long pos = 0;
+
+        private TailChannel(SeekableByteChannel delegate, Footer footer) {
+            this.delegate = Objects.requireNonNull(delegate);
+            this.footer = Objects.requireNonNull(footer);
+        }
+
+        @Override
+        public int read(ByteBuffer dst) throws IOException {
+            if (pos >= footer.length) {
+                return -1;
+            }
+            if (pos >= footer.tailStart) {
+                ByteBuffer tail = footer.tail.duplicate();
+                tail.position(Math.toIntExact(pos - footer.tailStart));
+                int read = Math.min(tail.remaining(), dst.remaining());
+                tail.limit(tail.position() + read);
+                dst.put(tail);
+                pos += read;
+                return read;
+            }
+            int start = dst.position();
+            delegate.position(pos);
+            int read = delegate.read(dst);
+            pos += dst.position() - start;
+            return read;
+        }
+
+        @Override
+        public int write(ByteBuffer src) {
+            throw new NonWritableChannelException();
+        }
+
+        @Override
+        public long position() {
+            return pos;
+        }
+
+        @Override
+        public SeekableByteChannel position(long newPosition) {
+            pos = newPosition;
+            return this;
+        }
+
+        @Override
+        public long size() {
+            return footer.length;
+        }
+
+        @Override
+        public SeekableByteChannel truncate(long size) {
+            throw new NonWritableChannelException();
+        }
+
+        @Override
+        public boolean isOpen() {
+            return delegate.isOpen();
+        }
+
+        @Override
+        public void close() throws IOException {
+            delegate.close();
+        }
+    }
+}
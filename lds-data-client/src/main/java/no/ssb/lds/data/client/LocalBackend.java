@@ -9,29 +9,76 @@ import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.nio.channels.SeekableByteChannel;
+import java.nio.file.DirectoryNotEmptyException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
+import java.util.stream.Stream;
 
 public class LocalBackend implements BinaryBackend {
 
     private final String prefix;
+    private final boolean memoryMapped;
 
     public LocalBackend(String prefix) {
+        this(prefix, false);
+    }
+
+    /**
+     * Create a new backend.
+     *
+     * @param prefix       the prefix of all the paths.
+     * @param memoryMapped whether the files are memory mapped when read, see {@link MappedFileChannel}.
+     */
+    public LocalBackend(String prefix, boolean memoryMapped) {
         this.prefix = prefix;
+        this.memoryMapped = memoryMapped;
     }
 
+    /**
+     * Returns the files whose path starts with the given path.
+     * <p>
+     * The directory is walked lazily, the files are emitted as they are found.
+     */
     @Override
     public Flowable<String> list(String path) throws IOException {
-        return null;
+        return Flowable.defer(() -> {
+            String fullPath = prefix + path;
+            Path directory = path.endsWith("/") ? Path.of(fullPath) : Path.of(fullPath).getParent();
+            if (directory == null || !Files.isDirectory(directory)) {
+                return Flowable.empty();
+            }
+            Stream<Path> files = Files.walk(directory);
+            return Flowable.fromIterable(files::iterator)
+                    .doFinally(files::close)
+                    .filter(Files::isRegularFile)
+                    .map(Path::toString)
+                    .filter(file -> file.startsWith(fullPath))
+                    .map(file -> file.substring(prefix.length()));
+        });
     }
 
     @Override
-    public SeekableByteChannel read(String path) throws FileNotFoundException {
+    public SeekableByteChannel read(String path) throws IOException {
         File file = new File(prefix + path);
+        if (memoryMapped) {
+            if (!file.isFile()) {
+                throw new FileNotFoundException(file.toString());
+            }
+            return MappedFileChannel.open(file.toPath());
+        }
         return new FileInputStream(file).getChannel();
     }
 
+    @Override
+    public String version(String path) throws IOException {
+        File file = new File(prefix + path);
+        if (!file.exists()) {
+            throw new FileNotFoundException(file.toString());
+        }
+        return file.lastModified() + "-" + file.length();
+    }
+
     @Override
     public SeekableByteChannel write(String path) throws IOException {
         File file = new File(prefix + path);
@@ -49,12 +96,28 @@ public class LocalBackend implements BinaryBackend {
     public void move(String from, String to) throws IOException {
         File source = new File(prefix + from);
         Path destination = new File(prefix + to).toPath();
+        Files.createDirectories(destination.getParent());
         Files.move(source.toPath(), destination, StandardCopyOption.ATOMIC_MOVE);
     }
 
+    /**
+     * Deletes the file and the directories it leaves empty, up to the prefix.
+     */
     @Override
     public void delete(String path) throws IOException {
-        File file = new File(prefix + path);
-        Files.delete(file.toPath());
+        Path file = new File(prefix + path).toPath().toAbsolutePath();
+        if (!Files.isRegularFile(file)) {
+            throw new FileNotFoundException(file.toString());
+        }
+        Files.delete(file);
+        Path root = Path.of(prefix).toAbsolutePath();
+        for (Path directory = file.getParent(); directory != null && directory.startsWith(root)
+                && !directory.equals(root); directory = directory.getParent()) {
+            try {
+                Files.delete(directory);
+            } catch (DirectoryNotEmptyException dnee) {
+                break;
+            }
+        }
     }
 }
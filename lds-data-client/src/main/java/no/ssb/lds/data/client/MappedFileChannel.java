@@ -0,0 +1,227 @@
+package no.ssb.lds.data.client;
+
+import org.apache.parquet.io.SeekableInputStream;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A read only channel over a memory mapped file.
+ * <p>
+ * The file is mapped in chunks since a {@link MappedByteBuffer} cannot be larger than 2 GB. Reads copy the bytes
+ * from the mapping directly into the destination buffer, without system calls. Use {@link #newStream()} to get a
+ * parquet {@link SeekableInputStream} over the mapping.
+ * <p>
+ * The mappings are released when the channel is garbage collected, not when it is closed.
+ */
+public class MappedFileChannel implements SeekableByteChannel {
+
+    static final int DEFAULT_CHUNK_SIZE = 1 << 30;
+
+    private final MappedByteBuffer[] chunks;
+    private final int chunkSize;
+    private final long size;
+    private long pos = 0;
+    private boolean open = true;
+
+    private MappedFileChannel(MappedByteBuffer[] chunks, int chunkSize, long size) {
+        this.chunks = chunks;
+        this.chunkSize = chunkSize;
+        this.size = size;
+    }
+
+    /**
+     * Maps the file.
+     */
+    public static MappedFileChannel open(Path path) throws IOException {
+        return open(path, DEFAULT_CHUNK_SIZE);
+    }
+
+    static MappedFileChannel open(Path path, int chunkSize) throws IOException {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("chunkSize must be positive");
+        }
+        // The mappings stay valid after the file channel is closed.
+        try (FileChannel file = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = file.size();
+            MappedByteBuffer[] chunks = new MappedByteBuffer[Math.toIntExact((size + chunkSize - 1) / chunkSize)];
+            for (int i = 0; i < chunks.length; i++) {
+                long start = (long) i * chunkSize;
+                chunks[i] = file.map(FileChannel.MapMode.READ_ONLY, start, Math.min(chunkSize, size - start));
+            }
+            return new MappedFileChannel(chunks, chunkSize, size);
+        }
+    }
+
+    /**
+     * Copies up to length bytes at position into dst.
+     */
+    private int copy(long position, ByteBuffer dst, int length) {
+        int copied = 0;
+        while (copied < length && position < size) {
+            ByteBuffer chunk = chunks[(int) (position / chunkSize)].duplicate();
+            chunk.position((int) (position % chunkSize));
+            int count = Math.min(chunk.remaining(), length - copied);
+            chunk.limit(chunk.position() + count);
+            dst.put(chunk);
+            copied += count;
+            position += count;
+        }
+        return copied;
+    }
+
+    private void ensureOpen() throws ClosedChannelException {
+        if (!open) {
+            throw new ClosedChannelException();
+        }
+    }
+
+    @Override
+    public int read(ByteBuffer dst) throws IOException {
+        ensureOpen();
+        if (pos >= size) {
+            return -1;
+        }
+        int read = copy(pos, dst, dst.remaining());
+        pos += read;
+        return read;
+    }
+
+    @Override
+    public int write(ByteBuffer src) {
+        throw new NonWritableChannelException();
+    }
+
+    @Override
+    public long position() throws IOException {
+        ensureOpen();
+        return pos;
+    }
+
+    @Override
+    public SeekableByteChannel position(long newPosition) throws IOException {
+        ensureOpen();
+        if (newPosition < 0) {
+            throw new IllegalArgumentException("negative position");
+        }
+        pos = newPosition;
+        return this;
+    }
+
+    @Override
+    public long size() throws IOException {
+        ensureOpen();
+        return size;
+    }
+
+    @Override
+    public SeekableByteChannel truncate(long size) {
+        throw new NonWritableChannelException();
+    }
+
+    @Override
+    public boolean isOpen() {
+        return open;
+    }
+
+    @Override
+    public void close() {
+        open = false;
+    }
+
+    /**
+     * Returns a stream that reads from the mapping at the position of this channel.
+     * <p>
+     * The stream shares the position of the channel. Reads into {@link ByteBuffer}s, heap or direct, are served
+     * straight from the mapping.
+     */
+    public SeekableInputStream newStream() {
+        return new SeekableInputStream() {
+
+            @Override
+            public long getPos() throws IOException {
+                return position();
+            }
+
+            @Override
+            public void seek(long newPos) throws IOException {
+                position(newPos);
+            }
+
+            @Override
+            public int read() throws IOException {
+                ensureOpen();
+                if (pos >= size) {
+                    return -1;
+                }
+                int value = chunks[(int) (pos / chunkSize)].get((int) (pos % chunkSize)) & 0xFF;
+                pos++;
+                return value;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                if (len == 0) {
+                    return 0;
+                }
+                return MappedFileChannel.this.read(ByteBuffer.wrap(b, off, len));
+            }
+
+            @Override
+            public long skip(long n) throws IOException {
+                ensureOpen();
+                long skipped = Math.max(Math.min(n, size - pos), 0);
+                pos += skipped;
+                return skipped;
+            }
+
+            @Override
+            public int available() throws IOException {
+                ensureOpen();
+                return (int) Math.min(Math.max(size - pos, 0), Integer.MAX_VALUE);
+            }
+
+            @Override
+            public void readFully(byte[] bytes) throws IOException {
+                readFully(ByteBuffer.wrap(bytes));
+            }
+
+            @Override
+            public void readFully(byte[] bytes, int start, int len) throws IOException {
+                readFully(ByteBuffer.wrap(bytes, start, len));
+            }
+
+            @Override
+            public int read(ByteBuffer buf) throws IOException {
+                if (!buf.hasRemaining()) {
+                    return 0;
+                }
+                return MappedFileChannel.this.read(buf);
+            }
+
+            @Override
+            public void readFully(ByteBuffer buf) throws IOException {
+                ensureOpen();
+                int length = buf.remaining();
+                if (pos + length > size) {
+                    throw new EOFException("reached the end of the file with " + (pos + length - size)
+                            + " bytes left to read");
+                }
+                pos += copy(pos, buf, length);
+            }
+
+            @Override
+            public void close() {
+                MappedFileChannel.this.close();
+            }
+        };
+    }
+}
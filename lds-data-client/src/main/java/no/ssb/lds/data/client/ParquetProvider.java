@@ -2,14 +2,19 @@ package no.ssb.lds.data.client;
 
 import org.apache.avro.Schema;
 import org.apache.avro.generic.GenericRecord;
+import org.apache.parquet.ParquetReadOptions;
 import org.apache.parquet.avro.AvroParquetReader;
 import org.apache.parquet.avro.AvroParquetWriter;
+import org.apache.parquet.avro.AvroReadSupport;
+import org.apache.parquet.column.ParquetProperties.WriterVersion;
 import org.apache.parquet.hadoop.ParquetFileReader;
 import org.apache.parquet.hadoop.ParquetReader;
 import org.apache.parquet.hadoop.ParquetWriter;
+import org.apache.parquet.hadoop.metadata.BlockMetaData;
+import org.apache.parquet.hadoop.metadata.ColumnChunkMetaData;
 import org.apache.parquet.hadoop.metadata.CompressionCodecName;
+import org.apache.parquet.hadoop.metadata.ParquetMetadata;
 import org.apache.parquet.io.DelegatingPositionOutputStream;
-import org.apache.parquet.io.DelegatingSeekableInputStream;
 import org.apache.parquet.io.InputFile;
 import org.apache.parquet.io.OutputFile;
 import org.apache.parquet.io.PositionOutputStream;
@@ -18,6 +23,8 @@ import org.apache.parquet.io.SeekableInputStream;
 import java.io.IOException;
 import java.nio.channels.Channels;
 import java.nio.channels.SeekableByteChannel;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Objects;
 
 import static org.apache.parquet.filter2.compat.FilterCompat.Filter;
@@ -25,9 +32,12 @@ import static org.apache.parquet.filter2.compat.FilterCompat.Filter;
 public class ParquetProvider {
 
     private final Configuration configuration;
+    private final FooterCache footerCache;
 
     public ParquetProvider(Configuration configuration) {
         this.configuration = configuration;
+        long footerCacheSize = configuration.getFooterCacheSize();
+        this.footerCache = footerCacheSize > 0 ? new FooterCache(footerCacheSize) : null;
     }
 
     /**
@@ -37,17 +47,179 @@ public class ParquetProvider {
         return ParquetFileReader.open(new SeekableByteChannelInputFile(input));
     }
 
+    /**
+     * Returns the footer of the file.
+     * <p>
+     * The footer is cached under the given key. The key must identify the content of the file, ie. the path and a
+     * version. If the key is null the footer is read from the input.
+     */
+    public ParquetMetadata getFooter(String key, SeekableByteChannel input) throws IOException {
+        if (footerCache == null || key == null) {
+            try (ParquetFileReader reader = getMetadata(input)) {
+                return reader.getFooter();
+            }
+        }
+        FooterCache.Footer footer = footerCache.get(key, input);
+        ParquetMetadata metadata = footer.getMetadata();
+        if (metadata == null) {
+            try (ParquetFileReader reader = getMetadata(footer.wrap(input))) {
+                metadata = reader.getFooter();
+            }
+            footer.setMetadata(metadata);
+        }
+        return metadata;
+    }
+
+    /**
+     * Returns the cached footer of the file, or null if it is not cached. Used to avoid opening the file when the
+     * footer is all that is needed.
+     */
+    public ParquetMetadata getCachedFooter(String key) {
+        if (footerCache == null || key == null) {
+            return null;
+        }
+        FooterCache.Footer footer = footerCache.getIfPresent(key);
+        return footer == null ? null : footer.getMetadata();
+    }
+
+    /**
+     * Returns a channel that serves the footer of the file from the cache.
+     * <p>
+     * Readers opened on the returned channel do not fetch the tail of the file again. See
+     * {@link #getFooter(String, SeekableByteChannel)} for the key.
+     */
+    public SeekableByteChannel withCachedFooter(String key, SeekableByteChannel input) throws IOException {
+        // The tail of a mapped file is already in memory.
+        if (footerCache == null || key == null || input instanceof MappedFileChannel) {
+            return input;
+        }
+        return footerCache.get(key, input).wrap(input);
+    }
+
+    /**
+     * Returns a channel that fetches the column chunks of each row group in one batch with
+     * {@link BinaryBackend#readRanges(String, String, List)}.
+     * <p>
+     * Only the chunks of the columns in the schema are fetched, or all of them if the schema is null. The chunks of
+     * the row group being read are kept in memory until the reader moves to the next one. The row groups that the
+     * reader skips are not fetched.
+     *
+     * @param input   the channel used for the other reads, ie. the footer.
+     * @param footer  the footer of the file.
+     * @param schema  the projection used by the reader, can be null.
+     * @param backend the backend used to fetch the chunks.
+     * @param path    the path of the file.
+     * @param version the version of the file the footer was read from, so that the chunks match the footer.
+     */
+    public SeekableByteChannel withRowGroupPrefetch(SeekableByteChannel input, ParquetMetadata footer, Schema schema,
+                                                    BinaryBackend backend, String path, String version) {
+        List<Range> rowGroups = new ArrayList<>();
+        List<List<Range>> chunks = new ArrayList<>();
+        for (BlockMetaData block : footer.getBlocks()) {
+            List<Range> ranges = new ArrayList<>();
+            long end = block.getStartingPos();
+            for (ColumnChunkMetaData column : block.getColumns()) {
+                end = Math.max(end, column.getStartingPos() + column.getTotalSize());
+                if (schema == null || schema.getField(column.getPath().toArray()[0]) != null) {
+                    ranges.add(new Range(column.getStartingPos(), Math.toIntExact(column.getTotalSize())));
+                }
+            }
+            rowGroups.add(new Range(block.getStartingPos(), Math.toIntExact(end - block.getStartingPos())));
+            chunks.add(ranges);
+        }
+        return new RowGroupPrefetchChannel(input, rowGroups, chunks,
+                ranges -> backend.readRanges(path, version, ranges));
+    }
+
+    /**
+     * Returns a reader for the file.
+     * <p>
+     * The schema is used as projection; only the columns it contains are read from the input.
+     */
     public ParquetReader<GenericRecord> getReader(SeekableByteChannel input, Schema schema, Filter filter)
             throws IOException {
-        SeekableByteChannelInputFile inputFile = new SeekableByteChannelInputFile(input);
-        ParquetReader<GenericRecord> reader = AvroParquetReader.<GenericRecord>builder(inputFile)
+        return getReader(input, schema, filter, false);
+    }
+
+    /**
+     * Returns a reader for the file.
+     * <p>
+     * When reuseRecord is true the reader returns the same record instance for every row, overwriting its fields.
+     * Nested records and collections are not reused. The schema is required in this mode.
+     */
+    public ParquetReader<GenericRecord> getReader(SeekableByteChannel input, Schema schema, Filter filter,
+                                                  boolean reuseRecord) throws IOException {
+        return readerBuilder(input, schema, reuseRecord)
+                .withFilter(filter)
+                .build();
+    }
+
+    /**
+     * Returns a reader limited to the row groups whose midpoint falls between start (inclusive) and end
+     * (exclusive), in bytes.
+     */
+    public ParquetReader<GenericRecord> getReader(SeekableByteChannel input, Schema schema, Filter filter,
+                                                  long start, long end) throws IOException {
+        return getReader(input, schema, filter, start, end, false);
+    }
+
+    /**
+     * Returns a reader limited to a range of row groups, see {@link #getReader(SeekableByteChannel, Schema, Filter,
+     * long, long)} and {@link #getReader(SeekableByteChannel, Schema, Filter, boolean)}.
+     */
+    public ParquetReader<GenericRecord> getReader(SeekableByteChannel input, Schema schema, Filter filter,
+                                                  long start, long end, boolean reuseRecord) throws IOException {
+        return readerBuilder(input, schema, reuseRecord)
                 .withFilter(filter)
+                .withFileRange(start, end)
                 .build();
-        return reader;
     }
 
+    /**
+     * Returns a reader that decodes the file one row group at a time into column vectors.
+     * <p>
+     * The schema is used as projection and must be flat. The filter is only used to skip the row groups that
+     * cannot match using their statistics and dictionaries; the rows of the remaining row groups are not filtered.
+     */
+    public ColumnBatchReader getColumnReader(SeekableByteChannel input, Schema schema, Filter filter)
+            throws IOException {
+        ParquetReadOptions options = ParquetReadOptions.builder()
+                .withRecordFilter(filter)
+                .build();
+        ParquetFileReader reader = ParquetFileReader.open(new SeekableByteChannelInputFile(input), options);
+        try {
+            return new ColumnBatchReader(reader, schema);
+        } catch (RuntimeException e) {
+            reader.close();
+            throw e;
+        }
+    }
+
+    private ParquetReader.Builder<GenericRecord> readerBuilder(SeekableByteChannel input, Schema schema,
+                                                               boolean reuseRecord) {
+        SeekableByteChannelInputFile inputFile = new SeekableByteChannelInputFile(input);
+        AvroParquetReader.Builder<GenericRecord> builder = AvroParquetReader.builder(inputFile);
+        if (schema != null) {
+            // Note that withConf() resets the options so it has to be called first.
+            org.apache.hadoop.conf.Configuration conf = new org.apache.hadoop.conf.Configuration();
+            AvroReadSupport.setRequestedProjection(conf, schema);
+            AvroReadSupport.setAvroReadSchema(conf, schema);
+            builder.withConf(conf);
+        }
+        if (reuseRecord) {
+            builder.withDataModel(new ReusingDataModel(Objects.requireNonNull(schema, "schema")));
+        }
+        return builder;
+    }
+
+    /**
+     * Returns a writer for the file.
+     * <p>
+     * The compression, encoding and size settings are taken from the {@link Configuration}; the settings that are
+     * not set use the parquet defaults.
+     */
     public ParquetWriter<GenericRecord> getWriter(SeekableByteChannel output, Schema schema) throws IOException {
-        ParquetWriter<GenericRecord> writer = AvroParquetWriter.<GenericRecord>builder(new OutputFile() {
+        AvroParquetWriter.Builder<GenericRecord> builder = AvroParquetWriter.<GenericRecord>builder(new OutputFile() {
 
             @Override
             public PositionOutputStream create(long blockSizeHint) {
@@ -79,14 +251,29 @@ public class ParquetProvider {
                 return 0;
             }
         }).withSchema(schema)
-                .withCompressionCodec(CompressionCodecName.SNAPPY)
-                .withPageSize(configuration.getPageSize())
-                .withRowGroupSize(configuration.getRowGroupSize())
-                .build();
-        return writer;
+                .withCompressionCodec(configuration.getCompressionCodec());
+        if (configuration.getPageSize() != null) {
+            builder.withPageSize(configuration.getPageSize());
+        }
+        if (configuration.getRowGroupSize() != null) {
+            builder.withRowGroupSize(configuration.getRowGroupSize());
+        }
+        if (configuration.getDictionaryEncoding() != null) {
+            builder.withDictionaryEncoding(configuration.getDictionaryEncoding());
+        }
+        if (configuration.getDictionaryPageSize() != null) {
+            builder.withDictionaryPageSize(configuration.getDictionaryPageSize());
+        }
+        if (configuration.getWriterVersion() != null) {
+            builder.withWriterVersion(configuration.getWriterVersion());
+        }
+        if (configuration.getMaxPaddingSize() != null) {
+            builder.withMaxPaddingSize(configuration.getMaxPaddingSize());
+        }
+        return builder.build();
     }
 
-    private static class SeekableByteChannelInputFile implements InputFile {
+    private class SeekableByteChannelInputFile implements InputFile {
 
         private final SeekableByteChannel input;
 
@@ -100,18 +287,13 @@ public class ParquetProvider {
         }
 
         @Override
-        public SeekableInputStream newStream() {
-            return new DelegatingSeekableInputStream(Channels.newInputStream(input)) {
-                @Override
-                public long getPos() throws IOException {
-                    return input.position();
-                }
-
-                @Override
-                public void seek(long newPos) throws IOException {
-                    input.position(newPos);
-                }
-            };
+        public SeekableInputStream newStream() throws IOException {
+            if (input instanceof MappedFileChannel) {
+                return ((MappedFileChannel) input).newStream();
+            }
+            // The chunks are already in memory, reading ahead would go past them.
+            int bufferSize = input instanceof RowGroupPrefetchChannel ? 0 : configuration.getReadBufferSize();
+            return new ChannelSeekableInputStream(input, bufferSize);
         }
     }
 
@@ -119,6 +301,13 @@ public class ParquetProvider {
 
         private Integer rowGroupSize;
         private Integer pageSize;
+        private Long footerCacheSize = 32L * 1024 * 1024;
+        private Integer readBufferSize = 64 * 1024;
+        private CompressionCodecName compressionCodec = CompressionCodecName.SNAPPY;
+        private Boolean dictionaryEncoding;
+        private Integer dictionaryPageSize;
+        private WriterVersion writerVersion;
+        private Integer maxPaddingSize;
 
         public Configuration() {
         }
@@ -139,6 +328,91 @@ public class ParquetProvider {
             this.pageSize = pageSize;
         }
 
+        /**
+         * The maximum size in bytes of the cached footers, including an estimate of their parsed form. 0 disables
+         * the cache.
+         */
+        public Long getFooterCacheSize() {
+            return footerCacheSize;
+        }
+
+        public void setFooterCacheSize(Long footerCacheSize) {
+            this.footerCacheSize = footerCacheSize;
+        }
+
+        /**
+         * The size in bytes of the read-ahead buffer of the readers. Reads smaller than the buffer are served from
+         * it, larger reads go directly to the backend. 0 disables the buffer.
+         */
+        public Integer getReadBufferSize() {
+            return readBufferSize;
+        }
+
+        public void setReadBufferSize(Integer readBufferSize) {
+            this.readBufferSize = readBufferSize;
+        }
+
+        /**
+         * The codec used to compress the pages, SNAPPY by default.
+         * <p>
+         * GZIP gives smaller files for archival data at a higher write cost; UNCOMPRESSED is the fastest to scan
+         * when storage is cheap. LZO, BROTLI, LZ4 and ZSTD need the corresponding hadoop codecs and native
+         * libraries.
+         */
+        public CompressionCodecName getCompressionCodec() {
+            return compressionCodec;
+        }
+
+        public void setCompressionCodec(CompressionCodecName compressionCodec) {
+            this.compressionCodec = Objects.requireNonNull(compressionCodec);
+        }
+
+        /**
+         * Whether the columns are dictionary encoded. Columns whose dictionary grows over the dictionary page size
+         * fall back to plain encoding.
+         */
+        public Boolean getDictionaryEncoding() {
+            return dictionaryEncoding;
+        }
+
+        public void setDictionaryEncoding(Boolean dictionaryEncoding) {
+            this.dictionaryEncoding = dictionaryEncoding;
+        }
+
+        /**
+         * The maximum size in bytes of the dictionary of a column chunk.
+         */
+        public Integer getDictionaryPageSize() {
+            return dictionaryPageSize;
+        }
+
+        public void setDictionaryPageSize(Integer dictionaryPageSize) {
+            this.dictionaryPageSize = dictionaryPageSize;
+        }
+
+        /**
+         * The parquet format version. PARQUET_2_0 uses the delta encodings for integers and strings, which are
+         * smaller for sorted columns but not supported by all readers.
+         */
+        public WriterVersion getWriterVersion() {
+            return writerVersion;
+        }
+
+        public void setWriterVersion(WriterVersion writerVersion) {
+            this.writerVersion = writerVersion;
+        }
+
+        /**
+         * The maximum number of bytes used to align the row groups.
+         */
+        public Integer getMaxPaddingSize() {
+            return maxPaddingSize;
+        }
+
+        public void setMaxPaddingSize(Integer maxPaddingSize) {
+            this.maxPaddingSize = maxPaddingSize;
+        }
+
     }
 
 }
@@ -0,0 +1,66 @@
+package no.ssb.lds.data.client;
+
+import org.apache.avro.generic.GenericRecord;
+
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Hive style partition directories (column=value/column=value/).
+ * <p>
+ * Values are url encoded so that they can contain slashes and equal signs. Null values are written as
+ * {@value #NULL_VALUE}.
+ */
+final class Partitions {
+
+    static final String NULL_VALUE = "__HIVE_DEFAULT_PARTITION__";
+
+    private Partitions() {
+    }
+
+    /**
+     * Returns the directory of the record, without trailing slash.
+     */
+    static String directory(List<String> columns, GenericRecord record) {
+        StringBuilder directory = new StringBuilder();
+        for (String column : columns) {
+            if (directory.length() > 0) {
+                directory.append('/');
+            }
+            Object value = record.get(column);
+            directory.append(encode(column)).append('=')
+                    .append(value == null ? NULL_VALUE : encode(value.toString()));
+        }
+        return directory.toString();
+    }
+
+    /**
+     * Parses the partition values of a path relative to the dataset. Segments that are not column=value pairs
+     * (ie. the file name) are ignored.
+     */
+    static Map<String, String> parse(String relativePath) {
+        Map<String, String> values = new LinkedHashMap<>();
+        String[] segments = relativePath.split("/");
+        for (int i = 0; i < segments.length - 1; i++) {
+            int separator = segments[i].indexOf('=');
+            if (separator <= 0) {
+                continue;
+            }
+            String value = segments[i].substring(separator + 1);
+            values.put(decode(segments[i].substring(0, separator)), NULL_VALUE.equals(value) ? null : decode(value));
+        }
+        return values;
+    }
+
+    private static String encode(String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8);
+    }
+
+    private static String decode(String value) {
+        return URLDecoder.decode(value, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,136 @@
+package no.ssb.lds.data.client;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * A range of bytes in a file, see {@link BinaryBackend#readRanges(String, List)}.
+ */
+public final class Range {
+
+    private final long offset;
+    private final int length;
+
+    public Range(long offset, int length) {
+        if (offset < 0 || length < 0) {
+            throw new IllegalArgumentException("negative offset or length");
+        }
+        this.offset = offset;
+        this.length = length;
+    }
+
+    public long getOffset() {
+        return offset;
+    }
+
+    public int getLength() {
+        return length;
+    }
+
+    public long getEnd() {
+        return offset + length;
+    }
+
+    /**
+     * Returns true if this range contains the other one.
+     */
+    public boolean contains(Range other) {
+        return offset <= other.offset && other.getEnd() <= getEnd();
+    }
+
+    /**
+     * Merges the ranges that overlap or are separated by at most maxGap bytes.
+     * <p>
+     * The returned ranges are sorted by offset and no larger than 2 GB. Reading the gaps is usually cheaper than
+     * issuing another request to remote storage.
+     */
+    public static List<Range> coalesce(List<Range> ranges, long maxGap) {
+        List<Range> sorted = new ArrayList<>(ranges);
+        sorted.sort(Comparator.comparingLong(Range::getOffset));
+        List<Range> merged = new ArrayList<>();
+        Range current = null;
+        for (Range range : sorted) {
+            if (current != null && range.offset - current.getEnd() <= maxGap
+                    && Math.max(current.getEnd(), range.getEnd()) - current.offset <= Integer.MAX_VALUE) {
+                current = new Range(current.offset,
+                        (int) (Math.max(current.getEnd(), range.getEnd()) - current.offset));
+            } else {
+                if (current != null) {
+                    merged.add(current);
+                }
+                current = range;
+            }
+        }
+        if (current != null) {
+            merged.add(current);
+        }
+        return merged;
+    }
+
+    /**
+     * Returns read only slices of the buffers read for the merged ranges, one per range, in the order of ranges.
+     *
+     * @param ranges  the requested ranges.
+     * @param merged  the merged ranges, see {@link #coalesce(List, long)}.
+     * @param buffers the content of the merged ranges.
+     */
+    public static List<ByteBuffer> slice(List<Range> ranges, List<Range> merged, List<ByteBuffer> buffers) {
+        List<ByteBuffer> slices = new ArrayList<>(ranges.size());
+        for (Range range : ranges) {
+            int index = 0;
+            while (!merged.get(index).contains(range)) {
+                index++;
+            }
+            ByteBuffer slice = buffers.get(index).duplicate();
+            slice.position((int) (range.offset - merged.get(index).offset));
+            slice.limit(slice.position() + range.length);
+            slices.add(slice.slice().asReadOnlyBuffer());
+        }
+        return slices;
+    }
+
+    /**
+     * Reads the range from the channel into a new buffer, ready to be read.
+     */
+    public static ByteBuffer read(SeekableByteChannel channel, Range range) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(range.length);
+        channel.position(range.offset);
+        while (buffer.hasRemaining()) {
+            int start = buffer.position();
+            if (channel.read(buffer) < 0 && buffer.position() == start) {
+                throw new EOFException("reached the end of the file with " + buffer.remaining()
+                        + " bytes left to read");
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        Range range = (Range) o;
+        return offset == range.offset && length == range.length;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(offset, length);
+    }
+
+    @Override
+    public String toString() {
+        return "Range{offset=" + offset + ", length=" + length + "}";
+    }
+}
@@ -0,0 +1,45 @@
+package no.ssb.lds.data.client;
+
+import org.apache.avro.Schema;
+import org.apache.avro.generic.IndexedRecord;
+import org.apache.avro.specific.SpecificData;
+
+import java.util.Objects;
+
+/**
+ * A data model that returns the same top level record for every row.
+ * <p>
+ * parquet-avro creates the records of a row with {@link SpecificData#newRecord(Object, Schema)}, starting with the
+ * top level one. The first top level record is kept and returned again for the next rows once its fields are
+ * cleared; the converters do not set the fields that are null in the row. Nested records, arrays and maps are
+ * created by the converters and are still allocated for every row.
+ * <p>
+ * An instance must only be used by one reader.
+ */
+class ReusingDataModel extends SpecificData {
+
+    private final String rootName;
+    private Schema rootSchema;
+    private IndexedRecord root;
+
+    ReusingDataModel(Schema schema) {
+        this.rootName = Objects.requireNonNull(schema).getFullName();
+    }
+
+    @Override
+    public Object newRecord(Object old, Schema schema) {
+        if (schema == rootSchema) {
+            for (int i = 0; i < rootSchema.getFields().size(); i++) {
+                root.put(i, null);
+            }
+            return root;
+        }
+        // The reader parses its own copy of the schema, the name identifies the top level record.
+        if (rootSchema == null && schema.getFullName().equals(rootName)) {
+            root = (IndexedRecord) super.newRecord(old, schema);
+            rootSchema = schema;
+            return root;
+        }
+        return super.newRecord(old, schema);
+    }
+}
@@ -0,0 +1,318 @@
+package no.ssb.lds.data.client;
+
+import org.apache.avro.Schema;
+import org.apache.parquet.filter2.predicate.FilterApi;
+import org.apache.parquet.filter2.predicate.FilterPredicate;
+import org.apache.parquet.filter2.predicate.Operators;
+import org.apache.parquet.io.api.Binary;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Simple filter expression on the columns of a dataset.
+ * <p>
+ * Filters are translated to parquet {@link FilterPredicate}s so that the readers can skip whole row groups using the
+ * column statistics and the dictionary pages before any record is materialized.
+ * <p>
+ * Columns are referred to by field name; nested fields use dots (ie. "address.municipality").
+ */
+public abstract class RowFilter {
+
+    private RowFilter() {
+    }
+
+    public static RowFilter eq(String column, Object value) {
+        return new Comparison(Operator.EQ, column, value);
+    }
+
+    public static RowFilter notEq(String column, Object value) {
+        return new Comparison(Operator.NOT_EQ, column, value);
+    }
+
+    public static RowFilter lt(String column, Object value) {
+        return new Comparison(Operator.LT, column, Objects.requireNonNull(value));
+    }
+
+    public static RowFilter ltEq(String column, Object value) {
+        return new Comparison(Operator.LT_EQ, column, Objects.requireNonNull(value));
+    }
+
+    public static RowFilter gt(String column, Object value) {
+        return new Comparison(Operator.GT, column, Objects.requireNonNull(value));
+    }
+
+    public static RowFilter gtEq(String column, Object value) {
+        return new Comparison(Operator.GT_EQ, column, Objects.requireNonNull(value));
+    }
+
+    /**
+     * Matches if the column is equal to one of the values.
+     */
+    public static RowFilter in(String column, Object... values) {
+        if (values.length == 0) {
+            throw new IllegalArgumentException("in requires at least one value");
+        }
+        List<RowFilter> filters = new ArrayList<>(values.length);
+        for (Object value : values) {
+            filters.add(eq(column, value));
+        }
+        return or(filters.toArray(new RowFilter[0]));
+    }
+
+    public static RowFilter and(RowFilter... filters) {
+        return new Logical(true, Arrays.asList(filters));
+    }
+
+    public static RowFilter or(RowFilter... filters) {
+        return new Logical(false, Arrays.asList(filters));
+    }
+
+    public static RowFilter not(RowFilter filter) {
+        return new Not(filter);
+    }
+
+    private static Schema getColumnSchema(Schema schema, String column) {
+        Schema current = schema;
+        for (String name : column.split("\\.")) {
+            Schema.Field field = unwrapNullable(current).getField(name);
+            if (field == null) {
+                throw new IllegalArgumentException("column " + column + " is not in the schema");
+            }
+            current = field.schema();
+        }
+        return unwrapNullable(current);
+    }
+
+    private static Schema unwrapNullable(Schema schema) {
+        if (schema.getType() != Schema.Type.UNION) {
+            return schema;
+        }
+        Schema nonNull = null;
+        for (Schema type : schema.getTypes()) {
+            if (type.getType() != Schema.Type.NULL) {
+                if (nonNull != null) {
+                    throw new IllegalArgumentException("unsupported union " + schema);
+                }
+                nonNull = type;
+            }
+        }
+        return nonNull;
+    }
+
+    private static <T extends Comparable<T>, C extends Operators.Column<T> & Operators.SupportsLtGt>
+    FilterPredicate compare(Operator operator, C column, T value) {
+        switch (operator) {
+            case EQ:
+                return FilterApi.eq(column, value);
+            case NOT_EQ:
+                return FilterApi.notEq(column, value);
+            case LT:
+                return FilterApi.lt(column, value);
+            case LT_EQ:
+                return FilterApi.ltEq(column, value);
+            case GT:
+                return FilterApi.gt(column, value);
+            case GT_EQ:
+                return FilterApi.gtEq(column, value);
+            default:
+                throw new IllegalArgumentException("unsupported operator " + operator);
+        }
+    }
+
+    @SuppressWarnings("rawtypes")
+    private static Comparable toComparable(Schema.Type type, Object value) {
+        if (value == null) {
+            return null;
+        }
+        switch (type) {
+            case STRING:
+            case ENUM:
+                return value.toString();
+            case INT:
+                return value instanceof Number ? ((Number) value).intValue() : Integer.parseInt(value.toString());
+            case LONG:
+                return value instanceof Number ? ((Number) value).longValue() : Long.parseLong(value.toString());
+            case FLOAT:
+                return value instanceof Number ? ((Number) value).floatValue() : Float.parseFloat(value.toString());
+            case DOUBLE:
+                return value instanceof Number ? ((Number) value).doubleValue() : Double.parseDouble(value.toString());
+            case BOOLEAN:
+                return value instanceof Boolean ? (Boolean) value : Boolean.parseBoolean(value.toString());
+            default:
+                throw new IllegalArgumentException("unsupported type " + type);
+        }
+    }
+
+    /**
+     * Converts the filter to a parquet {@link FilterPredicate}, using the schema to resolve the column types.
+     *
+     * @throws IllegalArgumentException if a column is not in the schema or its type is not supported.
+     */
+    public abstract FilterPredicate toPredicate(Schema schema);
+
+    /**
+     * Evaluates the filter against known column values, typically the partition values of a file.
+     * <p>
+     * Values can be strings, they are converted using the schema. Returns null when the result depends on columns
+     * that are not in the values.
+     */
+    abstract Boolean evaluate(Map<String, ?> values, Schema schema);
+
+    private enum Operator {
+        EQ, NOT_EQ, LT, LT_EQ, GT, GT_EQ
+    }
+
+    private static class Comparison extends RowFilter {
+
+        private final Operator operator;
+        private final String column;
+        private final Object value;
+
+        private Comparison(Operator operator, String column, Object value) {
+            this.operator = operator;
+            this.column = Objects.requireNonNull(column);
+            this.value = value;
+        }
+
+        @Override
+        public FilterPredicate toPredicate(Schema schema) {
+            Schema.Type type = getColumnSchema(schema, column).getType();
+            // Converted like in evaluate, so that string literals work on any column.
+            Object converted = toComparable(type, value);
+            switch (type) {
+                case STRING:
+                case ENUM:
+                    return compare(operator, FilterApi.binaryColumn(column),
+                            converted == null ? null : Binary.fromString((String) converted));
+                case INT:
+                    return compare(operator, FilterApi.intColumn(column), (Integer) converted);
+                case LONG:
+                    return compare(operator, FilterApi.longColumn(column), (Long) converted);
+                case FLOAT:
+                    return compare(operator, FilterApi.floatColumn(column), (Float) converted);
+                case DOUBLE:
+                    return compare(operator, FilterApi.doubleColumn(column), (Double) converted);
+                case BOOLEAN:
+                    if (operator == Operator.EQ) {
+                        return FilterApi.eq(FilterApi.booleanColumn(column), (Boolean) converted);
+                    } else if (operator == Operator.NOT_EQ) {
+                        return FilterApi.notEq(FilterApi.booleanColumn(column), (Boolean) converted);
+                    }
+                    throw new IllegalArgumentException("unsupported operator " + operator + " on " + column);
+                default:
+                    throw new IllegalArgumentException("unsupported type " + type + " for " + column);
+            }
+        }
+
+        @Override
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        Boolean evaluate(Map<String, ?> values, Schema schema) {
+            if (!values.containsKey(column)) {
+                return null;
+            }
+            Schema.Type type = getColumnSchema(schema, column).getType();
+            Comparable actual = toComparable(type, values.get(column));
+            Comparable expected = toComparable(type, value);
+            if (operator == Operator.EQ) {
+                return Objects.equals(actual, expected);
+            } else if (operator == Operator.NOT_EQ) {
+                return !Objects.equals(actual, expected);
+            }
+            if (actual == null) {
+                return false;
+            }
+            int comparison = actual.compareTo(expected);
+            switch (operator) {
+                case LT:
+                    return comparison < 0;
+                case LT_EQ:
+                    return comparison <= 0;
+                case GT:
+                    return comparison > 0;
+                case GT_EQ:
+                    return comparison >= 0;
+                default:
+                    throw new IllegalArgumentException("unsupported operator " + operator);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return column + " " + operator + " " + value;
+        }
+    }
+
+    private static class Logical extends RowFilter {
+
+        private final boolean and;
+        private final List<RowFilter> filters;
+
+        private Logical(boolean and, List<RowFilter> filters) {
+            if (filters.isEmpty()) {
+                throw new IllegalArgumentException("at least one filter is required");
+            }
+            this.and = and;
+            this.filters = filters;
+        }
+
+        @Override
+        public FilterPredicate toPredicate(Schema schema) {
+            FilterPredicate predicate = filters.get(0).toPredicate(schema);
+            for (RowFilter filter : filters.subList(1, filters.size())) {
+                predicate = and
+                        ? FilterApi.and(predicate, filter.toPredicate(schema))
+                        : FilterApi.or(predicate, filter.toPredicate(schema));
+            }
+            return predicate;
+        }
+
+        @Override
+        Boolean evaluate(Map<String, ?> values, Schema schema) {
+            // Three-valued logic, null is unknown.
+            Boolean result = and;
+            for (RowFilter filter : filters) {
+                Boolean value = filter.evaluate(values, schema);
+                if (value == null) {
+                    result = null;
+                } else if (value != and) {
+                    return value;
+                }
+            }
+            return result;
+        }
+
+        @Override
+        public String toString() {
+            return (and ? "and" : "or") + filters;
+        }
+    }
+
+    private static class Not extends RowFilter {
+
+        private final RowFilter filter;
+
+        private Not(RowFilter filter) {
+            this.filter = Objects.requireNonNull(filter);
+        }
+
+        @Override
+        public FilterPredicate toPredicate(Schema schema) {
+            return FilterApi.not(filter.toPredicate(schema));
+        }
+
+        @Override
+        Boolean evaluate(Map<String, ?> values, Schema schema) {
+            Boolean value = filter.evaluate(values, schema);
+            return value == null ? null : !value;
+        }
+
+        @Override
+        public String toString() {
+            return "not(" + filter + ")";
+        }
+    }
+}
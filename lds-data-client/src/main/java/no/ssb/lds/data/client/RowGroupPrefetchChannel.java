@@ -0,0 +1,165 @@
+package no.ssb.lds.data.client;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.SeekableByteChannel;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * A channel that fetches the column chunks of a row group in one batch.
+ * <p>
+ * When the reader reads the pages of a chunk, all the chunks that will be read from the row group are fetched with
+ * one call to the range reader and served from memory until another row group is fetched. Other reads (footer)
+ * go to the delegate.
+ * <p>
+ * The dictionary filter reads the dictionary pages of the row groups before deciding to skip them. These reads go
+ * to the delegate: a row group is only fetched by a read that covers the rest of the chunk (or at least
+ * {@value #MIN_PAGES_READ} bytes of it), which is how parquet reads the pages, whereas a dictionary page is only
+ * the beginning of the chunk.
+ */
+class RowGroupPrefetchChannel implements SeekableByteChannel {
+
+    // Parquet reads the chunks in buffers of at most 8 MiB (ParquetReadOptions max allocation size).
+    static final int MIN_PAGES_READ = 8 * 1024 * 1024;
+
+    private final SeekableByteChannel delegate;
+    private final List<Range> rowGroups;
+    private final List<List<Range>> chunks;
+    private final RangeReader reader;
+    private int current = -1;
+    private List<ByteBuffer> buffers;
+    private long pos = 0;
+
+    /**
+     * Create a new channel.
+     *
+     * @param delegate  the channel used for the reads outside of the chunks.
+     * @param rowGroups the extent of each row group.
+     * @param chunks    the chunks to fetch for each row group.
+     * @param reader    reads the chunks of a row group.
+     */
+    RowGroupPrefetchChannel(SeekableByteChannel delegate, List<Range> rowGroups, List<List<Range>> chunks,
+                            RangeReader reader) {
+        if (rowGroups.size() != chunks.size()) {
+            throw new IllegalArgumentException("one list of chunks per row group expected");
+        }
+        this.delegate = Objects.requireNonNull(delegate);
+        this.rowGroups = rowGroups;
+        this.chunks = chunks;
+        this.reader = Objects.requireNonNull(reader);
+    }
+
+    /**
+     * Returns the prefetched bytes at position, fetching the chunks of its row group if the read is a read of
+     * pages, or null.
+     */
+    private ByteBuffer prefetched(long position, int length) throws IOException {
+        ByteBuffer buffer = find(position);
+        if (buffer != null) {
+            return buffer;
+        }
+        for (int i = 0; i < rowGroups.size(); i++) {
+            Range rowGroup = rowGroups.get(i);
+            if (i != current && rowGroup.getOffset() <= position && position < rowGroup.getEnd()) {
+                Range chunk = null;
+                for (Range range : chunks.get(i)) {
+                    if (range.getOffset() <= position && position < range.getEnd()) {
+                        chunk = range;
+                    }
+                }
+                if (chunk == null || length < Math.min(chunk.getEnd() - position, MIN_PAGES_READ)) {
+                    return null;
+                }
+                // Release the previous row group first.
+                buffers = null;
+                buffers = reader.read(chunks.get(i));
+                current = i;
+                return find(position);
+            }
+        }
+        return null;
+    }
+
+    private ByteBuffer find(long position) {
+        if (current < 0) {
+            return null;
+        }
+        List<Range> ranges = chunks.get(current);
+        for (int i = 0; i < ranges.size(); i++) {
+            Range range = ranges.get(i);
+            if (range.getOffset() <= position && position < range.getEnd()) {
+                ByteBuffer buffer = buffers.get(i).duplicate();
+                buffer.position((int) (position - range.getOffset()));
+                return buffer;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public int read(ByteBuffer dst) throws IOException {
+        if (pos >= size()) {
+            return -1;
+        }
+        ByteBuffer buffer = prefetched(pos, dst.remaining());
+        if (buffer != null) {
+            int count = Math.min(buffer.remaining(), dst.remaining());
+            buffer.limit(buffer.position() + count);
+            dst.put(buffer);
+            pos += count;
+            return count;
+        }
+        delegate.position(pos);
+        int start = dst.position();
+        int read = delegate.read(dst);
+        pos += dst.position() - start;
+        return read;
+    }
+
+    @Override
+    public int write(ByteBuffer src) {
+        throw new NonWritableChannelException();
+    }
+
+    @Override
+    public long position() {
+        return pos;
+    }
+
+    @Override
+    public SeekableByteChannel position(long newPosition) {
+        pos = newPosition;
+        return this;
+    }
+
+    @Override
+    public long size() throws IOException {
+        return delegate.size();
+    }
+
+    @Override
+    public SeekableByteChannel truncate(long size) {
+        throw new NonWritableChannelException();
+    }
+
+    @Override
+    public boolean isOpen() {
+        return delegate.isOpen();
+    }
+
+    @Override
+    public void close() throws IOException {
+        buffers = null;
+        delegate.close();
+    }
+
+    /**
+     * Reads several ranges of the file, see {@link BinaryBackend#readRanges(String, String, List)}.
+     */
+    @FunctionalInterface
+    interface RangeReader {
+        List<ByteBuffer> read(List<Range> ranges) throws IOException;
+    }
+}
@@ -0,0 +1,34 @@
+package no.ssb.lds.data.client;
+
+import java.util.Objects;
+
+/**
+ * A path and its version, see {@link BinaryBackend#listVersions(String)}.
+ */
+public final class VersionedPath {
+
+    private final String path;
+    private final String version;
+
+    /**
+     * @param path    the path of the file.
+     * @param version the version of the file as returned by {@link BinaryBackend#version(String)}, can be null.
+     */
+    public VersionedPath(String path, String version) {
+        this.path = Objects.requireNonNull(path);
+        this.version = version;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public String getVersion() {
+        return version;
+    }
+
+    @Override
+    public String toString() {
+        return version == null ? path : path + "@" + version;
+    }
+}
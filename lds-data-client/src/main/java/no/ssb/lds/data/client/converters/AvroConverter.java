@@ -0,0 +1,112 @@
+package no.ssb.lds.data.client.converters;
+
+import io.reactivex.Completable;
+import io.reactivex.Flowable;
+import org.apache.avro.Schema;
+import org.apache.avro.file.CodecFactory;
+import org.apache.avro.file.DataFileStream;
+import org.apache.avro.file.DataFileWriter;
+import org.apache.avro.generic.GenericDatumReader;
+import org.apache.avro.generic.GenericDatumWriter;
+import org.apache.avro.generic.GenericRecord;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Objects;
+
+/**
+ * Converts Avro object container files.
+ * <p>
+ * The records are read and written in blocks by the Avro datum readers and writers without any text conversion.
+ * The schema of the input is resolved against the requested schema, so files written with a compatible schema
+ * can be read.
+ * <p>
+ * When reuseRecords is set, the same record instance is emitted for all the records of the input. This avoids
+ * an allocation per record but the consumers must not keep references to the records, ie. they must be written
+ * as they are received.
+ */
+public class AvroConverter implements FormatConverter {
+
+    private static final String MEDIA_TYPE = "avro/binary";
+
+    private final CodecFactory codec;
+    private final boolean reuseRecords;
+
+    public AvroConverter() {
+        this(CodecFactory.nullCodec(), false);
+    }
+
+    /**
+     * Create a new converter.
+     *
+     * @param codec        the codec used to compress the blocks when writing.
+     * @param reuseRecords whether to reuse the same record instance when reading.
+     */
+    public AvroConverter(CodecFactory codec, boolean reuseRecords) {
+        this.codec = Objects.requireNonNull(codec);
+        this.reuseRecords = reuseRecords;
+    }
+
+    @Override
+    public boolean doesSupport(String mediaType) {
+        if (mediaType == null) {
+            return false;
+        }
+        return mediaType.startsWith(MEDIA_TYPE);
+    }
+
+    @Override
+    public String getMediaType() {
+        return MEDIA_TYPE;
+    }
+
+    @Override
+    public Flowable<GenericRecord> read(InputStream input, String mimeType, Schema schema) {
+        return Flowable.<GenericRecord, RecordStream>generate(
+                () -> new RecordStream(new DataFileStream<>(input, new GenericDatumReader<>(null, schema))),
+                (stream, emitter) -> {
+                    if (stream.records.hasNext()) {
+                        emitter.onNext(stream.next());
+                    } else {
+                        emitter.onComplete();
+                    }
+                },
+                stream -> stream.records.close()
+        );
+    }
+
+    @Override
+    public boolean acceptsReusedRecords() {
+        return true;
+    }
+
+    @Override
+    public Completable write(Flowable<GenericRecord> records, OutputStream output, String mimeType, Schema schema) {
+        return Completable.defer(() -> {
+            // Not closed, the output belongs to the caller.
+            DataFileWriter<GenericRecord> writer = new DataFileWriter<GenericRecord>(new GenericDatumWriter<>(schema))
+                    .setCodec(codec)
+                    .create(schema, output);
+            return records.doOnNext(writer::append).doOnComplete(writer::flush).ignoreElements();
+        });
+    }
+
+    private class RecordStream {
+
+        private final DataFileStream<GenericRecord> records;
+        private GenericRecord reuse;
+
+        private RecordStream(DataFileStream<GenericRecord> records) {
+            this.records = records;
+        }
+
+        private GenericRecord next() throws IOException {
+            if (!reuseRecords) {
+                return records.next();
+            }
+            reuse = records.next(reuse);
+            return reuse;
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package no.ssb.lds.data.client.converters;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * Splits an input stream of line delimited records in blocks of complete records.
+ * <p>
+ * The blocks end after a line feed so that each block can be parsed independently. For CSV the line feeds inside
+ * quoted fields (RFC4180) are ignored; quotes are tracked across reads so escaped quotes ("") and quoted line
+ * breaks are handled. The scan works on bytes, which is safe for UTF-8 and other ASCII compatible charsets.
+ * <p>
+ * Blocks are at least blockSize bytes long, except the last one. A record longer than the block size makes the
+ * block grow until the record ends.
+ */
+class BlockSplitter {
+
+    private static final byte QUOTE = '"';
+    private static final byte LINE_FEED = '\n';
+
+    private final InputStream input;
+    private final int blockSize;
+    private final boolean quotes;
+    private byte[] buffer;
+    // Number of valid bytes in the buffer.
+    private int length = 0;
+    // Bytes before this index have been scanned.
+    private int scanned = 0;
+    // End of the last complete record found in the scanned bytes.
+    private int recordEnd = 0;
+    private boolean quoted = false;
+    private boolean eof = false;
+
+    private BlockSplitter(InputStream input, int blockSize, boolean quotes) {
+        if (blockSize <= 0) {
+            throw new IllegalArgumentException("blockSize must be positive");
+        }
+        this.input = input;
+        this.blockSize = blockSize;
+        this.quotes = quotes;
+        this.buffer = new byte[blockSize];
+    }
+
+    /**
+     * Splits CSV records, line feeds in quoted fields do not end a record.
+     */
+    static BlockSplitter csv(InputStream input, int blockSize) {
+        return new BlockSplitter(input, blockSize, true);
+    }
+
+    /**
+     * Splits lines, ie. NDJSON where line feeds cannot appear inside a record.
+     */
+    static BlockSplitter lines(InputStream input, int blockSize) {
+        return new BlockSplitter(input, blockSize, false);
+    }
+
+    /**
+     * Returns the next block or null at the end of the input.
+     */
+    byte[] next() throws IOException {
+        while (!eof && recordEnd < blockSize) {
+            if (length == buffer.length) {
+                buffer = Arrays.copyOf(buffer, buffer.length * 2);
+            }
+            int read = input.read(buffer, length, buffer.length - length);
+            if (read < 0) {
+                eof = true;
+                break;
+            }
+            length += read;
+            scan();
+        }
+        int end = eof ? length : recordEnd;
+        if (end == 0) {
+            return null;
+        }
+        byte[] block = Arrays.copyOf(buffer, end);
+        // Keep the incomplete record for the next block.
+        System.arraycopy(buffer, end, buffer, 0, length - end);
+        length -= end;
+        scanned -= end;
+        recordEnd = 0;
+        return block;
+    }
+
+    private void scan() {
+        for (int i = scanned; i < length; i++) {
+            byte b = buffer[i];
+            if (quotes && b == QUOTE) {
+                quoted = !quoted;
+            } else if (b == LINE_FEED && !quoted) {
+                recordEnd = i + 1;
+            }
+        }
+        scanned = length;
+    }
+}
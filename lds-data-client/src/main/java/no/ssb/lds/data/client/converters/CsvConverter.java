@@ -2,29 +2,93 @@ package no.ssb.lds.data.client.converters;
 
 import io.reactivex.Completable;
 import io.reactivex.Flowable;
+import io.reactivex.Scheduler;
+import io.reactivex.schedulers.Schedulers;
 import org.apache.avro.Schema;
 import org.apache.avro.generic.GenericRecord;
-import org.apache.avro.generic.GenericRecordBuilder;
 import org.apache.commons.csv.CSVFormat;
 import org.apache.commons.csv.CSVParser;
 import org.apache.commons.csv.CSVPrinter;
 import org.apache.commons.csv.CSVRecord;
 
 import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Objects;
 
 import static io.reactivex.Flowable.fromIterable;
 
+/**
+ * Converts CSV (RFC4180) with a header line.
+ * <p>
+ * By default the input is parsed on the subscribing thread. With a parallelism greater than one, the input is
+ * split in blocks of complete records that are parsed and converted concurrently; the records are still emitted in
+ * order and at most parallelism blocks are in memory. The parallel mode reads the input as UTF-8.
+ */
 public class CsvConverter implements FormatConverter {
 
+    public static final int DEFAULT_BLOCK_SIZE = 4 * 1024 * 1024;
+
     private static final String MEDIA_TYPE = "text/csv";
 
+    private final int parallelism;
+    private final int blockSize;
+    private final Scheduler scheduler;
+
+    public CsvConverter() {
+        this(1, DEFAULT_BLOCK_SIZE);
+    }
+
+    /**
+     * Create a converter that parses blocks of the input in parallel.
+     *
+     * @param parallelism the number of blocks parsed concurrently.
+     * @param blockSize   the minimum size of the blocks in bytes.
+     */
+    public CsvConverter(int parallelism, int blockSize) {
+        this(parallelism, blockSize, Schedulers.computation());
+    }
+
+    /**
+     * Create a converter that parses blocks of the input in parallel.
+     *
+     * @param parallelism the number of blocks parsed concurrently.
+     * @param blockSize   the minimum size of the blocks in bytes.
+     * @param scheduler   the scheduler the blocks are parsed on.
+     */
+    public CsvConverter(int parallelism, int blockSize, Scheduler scheduler) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism must be at least 1");
+        }
+        if (blockSize < 1) {
+            throw new IllegalArgumentException("blockSize must be positive");
+        }
+        this.parallelism = parallelism;
+        this.blockSize = blockSize;
+        this.scheduler = Objects.requireNonNull(scheduler);
+    }
+
+    private static CSVParser parseBlock(byte[] block, CSVFormat format) throws IOException {
+        return format.parse(new InputStreamReader(new ByteArrayInputStream(block), StandardCharsets.UTF_8));
+    }
+
+    private static List<GenericRecord> convertBlock(byte[] block, CsvRecordParser parser) throws IOException {
+        List<GenericRecord> records = new ArrayList<>();
+        try (CSVParser csvRecords = parseBlock(block, CSVFormat.RFC4180)) {
+            for (CSVRecord record : csvRecords) {
+                records.add(parser.parse(record));
+            }
+        }
+        return records;
+    }
+
     @Override
     public boolean doesSupport(String mediaType) {
         if (mediaType == null) {
@@ -43,12 +107,67 @@ public class CsvConverter implements FormatConverter {
         // TODO: Detect charset
         // TODO: Support Hierarchical dataset.
         // TODO: Fail if no headers.
+        if (parallelism > 1) {
+            return readParallel(input, schema);
+        }
         return Flowable.defer(() -> {
             CSVParser records = CSVFormat.RFC4180.withFirstRecordAsHeader().parse(new InputStreamReader(input));
-            return fromIterable(records).doFinally(records::close).map(record -> encodeRecord(record, schema));
+            if (records.getHeaderMap().isEmpty()) {
+                records.close();
+                return Flowable.empty();
+            }
+            CsvRecordParser parser;
+            try {
+                parser = new CsvRecordParser(schema, records.getHeaderMap());
+            } catch (RuntimeException re) {
+                records.close();
+                throw re;
+            }
+            return fromIterable(records).doFinally(records::close).map(parser::parse);
+        });
+    }
+
+    private Flowable<GenericRecord> readParallel(InputStream input, Schema schema) {
+        return Flowable.defer(() -> {
+            BlockSplitter splitter = BlockSplitter.csv(input, blockSize);
+            byte[] first = splitter.next();
+            if (first == null) {
+                return Flowable.empty();
+            }
+            // The header is in the first block; its records are converted on the subscribing thread.
+            CSVParser firstRecords = parseBlock(first, CSVFormat.RFC4180.withFirstRecordAsHeader());
+            if (firstRecords.getHeaderMap().isEmpty()) {
+                firstRecords.close();
+                return Flowable.empty();
+            }
+            CsvRecordParser parser;
+            try {
+                parser = new CsvRecordParser(schema, firstRecords.getHeaderMap());
+            } catch (RuntimeException re) {
+                firstRecords.close();
+                throw re;
+            }
+            Flowable<byte[]> blocks = Flowable.generate(emitter -> {
+                byte[] block = splitter.next();
+                if (block == null) {
+                    emitter.onComplete();
+                } else {
+                    emitter.onNext(block);
+                }
+            });
+            return fromIterable(firstRecords).doFinally(firstRecords::close).map(parser::parse).concatWith(
+                    blocks.concatMapEager(block -> Flowable.fromCallable(() -> convertBlock(block, parser))
+                            .subscribeOn(scheduler), parallelism, 1)
+                            .concatMapIterable(records -> records)
+            );
         });
     }
 
+    @Override
+    public boolean acceptsReusedRecords() {
+        return true;
+    }
+
     @Override
     public Completable write(Flowable<GenericRecord> records, OutputStream output, String mimeType, Schema schema) {
         // TODO: Detect charset
@@ -75,36 +194,4 @@ public class CsvConverter implements FormatConverter {
             }
         });
     }
-
-    private GenericRecord encodeRecord(CSVRecord record, Schema schema) {
-        GenericRecordBuilder recordBuilder = new GenericRecordBuilder(schema);
-        for (Schema.Field field : schema.getFields()) {
-            String name = field.name();
-            Schema.Type type = field.schema().getType();
-            String value = record.get(name);
-            switch (type) {
-                case STRING:
-                    recordBuilder.set(name, value);
-                    break;
-                case INT:
-                    recordBuilder.set(name, Integer.parseInt(value));
-                    break;
-                case LONG:
-                    recordBuilder.set(name, Long.parseLong(value));
-                    break;
-                case BOOLEAN:
-                    recordBuilder.set(name, Boolean.parseBoolean(value));
-                    break;
-                case FLOAT:
-                    recordBuilder.set(name, Float.parseFloat(value));
-                    break;
-                case DOUBLE:
-                    recordBuilder.set(name, Double.parseDouble(value));
-                    break;
-                default:
-                    throw new IllegalArgumentException("Unsupported type");
-            }
-        }
-        return recordBuilder.build();
-    }
 }
@@ -0,0 +1,179 @@
+package no.ssb.lds.data.client.converters;
+
+import org.apache.avro.Conversions;
+import org.apache.avro.LogicalType;
+import org.apache.avro.LogicalTypes;
+import org.apache.avro.Schema;
+import org.apache.avro.generic.GenericData;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.commons.csv.CSVRecord;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.TemporalAccessor;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Converts {@link CSVRecord}s to {@link GenericRecord}s.
+ * <p>
+ * The column index and the parser of each field are resolved once for the header and the schema. The records are
+ * then filled by position without any lookup or intermediate builder.
+ * <p>
+ * Nullable unions (["null", type]) are supported; empty values are read as null. The date, time, timestamp and
+ * decimal logical types are parsed from their ISO-8601 and plain decimal representations.
+ */
+class CsvRecordParser {
+
+    private static final Conversions.DecimalConversion DECIMAL_CONVERSION = new Conversions.DecimalConversion();
+
+    private final Schema schema;
+    private final int[] columns;
+    private final FieldParser[] parsers;
+    private final Object[] defaults;
+
+    /**
+     * Create a parser for the header.
+     *
+     * @param header the index of the columns by name.
+     * @throws IllegalArgumentException if a field without default value is missing from the header or if its
+     *                                  type is not supported.
+     */
+    CsvRecordParser(Schema schema, Map<String, Integer> header) {
+        this.schema = schema;
+        List<Schema.Field> fields = schema.getFields();
+        this.columns = new int[fields.size()];
+        this.parsers = new FieldParser[fields.size()];
+        this.defaults = new Object[fields.size()];
+        for (Schema.Field field : fields) {
+            int pos = field.pos();
+            columns[pos] = header.getOrDefault(field.name(), -1);
+            parsers[pos] = parser(field.schema());
+            if (columns[pos] < 0) {
+                if (field.defaultVal() != null) {
+                    defaults[pos] = GenericData.get().getDefaultValue(field);
+                } else if (!isNullable(field.schema())) {
+                    throw new IllegalArgumentException("column " + field.name() + " is missing");
+                }
+            }
+        }
+    }
+
+    private static boolean isNullable(Schema schema) {
+        if (schema.getType() != Schema.Type.UNION) {
+            return schema.getType() == Schema.Type.NULL;
+        }
+        for (Schema type : schema.getTypes()) {
+            if (type.getType() == Schema.Type.NULL) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static FieldParser parser(Schema schema) {
+        if (schema.getType() == Schema.Type.UNION) {
+            Schema nonNull = null;
+            for (Schema type : schema.getTypes()) {
+                if (type.getType() != Schema.Type.NULL) {
+                    if (nonNull != null) {
+                        throw new IllegalArgumentException("unsupported union " + schema);
+                    }
+                    nonNull = type;
+                }
+            }
+            if (nonNull == null) {
+                return value -> null;
+            }
+            FieldParser parser = parser(nonNull);
+            return value -> value.isEmpty() ? null : parser.parse(value);
+        }
+        LogicalType logicalType = schema.getLogicalType();
+        if (logicalType != null) {
+            return logicalParser(schema, logicalType);
+        }
+        switch (schema.getType()) {
+            case STRING:
+                return value -> value;
+            case INT:
+                return Integer::parseInt;
+            case LONG:
+                return Long::parseLong;
+            case BOOLEAN:
+                return Boolean::parseBoolean;
+            case FLOAT:
+                return Float::parseFloat;
+            case DOUBLE:
+                return Double::parseDouble;
+            case ENUM:
+                return value -> new GenericData.EnumSymbol(schema, value);
+            default:
+                throw new IllegalArgumentException("unsupported type " + schema.getType());
+        }
+    }
+
+    private static FieldParser logicalParser(Schema schema, LogicalType logicalType) {
+        if (logicalType instanceof LogicalTypes.Date) {
+            return value -> (int) LocalDate.parse(value).toEpochDay();
+        } else if (logicalType instanceof LogicalTypes.TimeMillis) {
+            return value -> (int) TimeUnit.NANOSECONDS.toMillis(LocalTime.parse(value).toNanoOfDay());
+        } else if (logicalType instanceof LogicalTypes.TimeMicros) {
+            return value -> TimeUnit.NANOSECONDS.toMicros(LocalTime.parse(value).toNanoOfDay());
+        } else if (logicalType instanceof LogicalTypes.TimestampMillis) {
+            return value -> parseInstant(value).toEpochMilli();
+        } else if (logicalType instanceof LogicalTypes.TimestampMicros) {
+            return value -> {
+                Instant instant = parseInstant(value);
+                return TimeUnit.SECONDS.toMicros(instant.getEpochSecond())
+                        + TimeUnit.NANOSECONDS.toMicros(instant.getNano());
+            };
+        } else if (logicalType instanceof LogicalTypes.Decimal) {
+            int scale = ((LogicalTypes.Decimal) logicalType).getScale();
+            if (schema.getType() == Schema.Type.FIXED) {
+                return value -> DECIMAL_CONVERSION.toFixed(
+                        new BigDecimal(value).setScale(scale, RoundingMode.UNNECESSARY), schema, logicalType);
+            }
+            return value -> DECIMAL_CONVERSION.toBytes(
+                    new BigDecimal(value).setScale(scale, RoundingMode.UNNECESSARY), schema, logicalType);
+        }
+        throw new IllegalArgumentException("unsupported logical type " + logicalType.getName());
+    }
+
+    /**
+     * Parses ISO-8601 date times, with or without offset. Local date times are in UTC.
+     */
+    private static Instant parseInstant(String value) {
+        TemporalAccessor temporal = DateTimeFormatter.ISO_DATE_TIME.parseBest(value,
+                OffsetDateTime::from, LocalDateTime::from);
+        if (temporal instanceof OffsetDateTime) {
+            return ((OffsetDateTime) temporal).toInstant();
+        }
+        return ((LocalDateTime) temporal).toInstant(ZoneOffset.UTC);
+    }
+
+    GenericRecord parse(CSVRecord record) {
+        GenericData.Record result = new GenericData.Record(schema);
+        for (int i = 0; i < columns.length; i++) {
+            int column = columns[i];
+            if (column < 0) {
+                result.put(i, defaults[i]);
+            } else {
+                result.put(i, parsers[i].parse(record.get(column)));
+            }
+        }
+        return result;
+    }
+
+    @FunctionalInterface
+    private interface FieldParser {
+        Object parse(String value);
+    }
+}
@@ -26,4 +26,13 @@ public interface FormatConverter {
      * Convert the {@link Flowable<GenericRecord>} to the output stream.
      */
     Completable write(Flowable<GenericRecord> records, OutputStream output, String mimeType, Schema schema);
+
+    /**
+     * Returns true if {@link #write} is done with each record before the next one is emitted, ie. the same record
+     * instance can be reused for all the records. Converters that keep references to the records, for instance to
+     * write them in batches, must return false.
+     */
+    default boolean acceptsReusedRecords() {
+        return false;
+    }
 }
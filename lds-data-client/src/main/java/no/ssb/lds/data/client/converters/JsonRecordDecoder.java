@@ -0,0 +1,274 @@
+package no.ssb.lds.data.client.converters;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import org.apache.avro.Schema;
+import org.apache.avro.generic.GenericData;
+import org.apache.avro.generic.GenericRecord;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Decodes JSON objects to {@link GenericRecord}s, reading the tokens directly into the records.
+ * <p>
+ * The decoders are compiled once from the schema. Records, arrays, maps and unions are supported. Unions pick the
+ * first branch that accepts the current token so nullable types (["null", type]) read null or the value. Bytes
+ * are base64 encoded. Unknown fields are skipped and missing fields get their default value, or null if they
+ * are nullable.
+ */
+class JsonRecordDecoder {
+
+    private final ValueDecoder decoder;
+
+    JsonRecordDecoder(Schema schema) {
+        if (schema.getType() != Schema.Type.RECORD) {
+            throw new IllegalArgumentException("schema must be a record");
+        }
+        this.decoder = compile(schema, new IdentityHashMap<>());
+    }
+
+    private static ValueDecoder compile(Schema schema, Map<Schema, ValueDecoder> records) {
+        switch (schema.getType()) {
+            case RECORD:
+                ValueDecoder compiled = records.get(schema);
+                if (compiled == null) {
+                    // Recursive schemas refer to the decoder being compiled.
+                    RecordDecoder recordDecoder = new RecordDecoder(schema);
+                    records.put(schema, recordDecoder);
+                    recordDecoder.compile(records);
+                    compiled = recordDecoder;
+                }
+                return compiled;
+            case ARRAY:
+                return arrayDecoder(schema, compile(schema.getElementType(), records));
+            case MAP:
+                return mapDecoder(compile(schema.getValueType(), records));
+            case UNION:
+                return unionDecoder(schema, records);
+            case NULL:
+                return parser -> {
+                    expect(parser, parser.currentToken() == JsonToken.VALUE_NULL, schema);
+                    return null;
+                };
+            case STRING:
+                return parser -> {
+                    expect(parser, parser.currentToken() == JsonToken.VALUE_STRING, schema);
+                    return parser.getText();
+                };
+            case ENUM:
+                return parser -> {
+                    expect(parser, parser.currentToken() == JsonToken.VALUE_STRING, schema);
+                    return new GenericData.EnumSymbol(schema, parser.getText());
+                };
+            case BYTES:
+                return parser -> {
+                    expect(parser, parser.currentToken() == JsonToken.VALUE_STRING, schema);
+                    return ByteBuffer.wrap(parser.getBinaryValue());
+                };
+            case INT:
+                return parser -> parser.currentToken() == JsonToken.VALUE_STRING
+                        ? Integer.parseInt(parser.getText())
+                        : integral(parser, schema).getIntValue();
+            case LONG:
+                return parser -> parser.currentToken() == JsonToken.VALUE_STRING
+                        ? Long.parseLong(parser.getText())
+                        : integral(parser, schema).getLongValue();
+            case FLOAT:
+                return parser -> parser.currentToken() == JsonToken.VALUE_STRING
+                        ? Float.parseFloat(parser.getText())
+                        : numeric(parser, schema).getFloatValue();
+            case DOUBLE:
+                return parser -> parser.currentToken() == JsonToken.VALUE_STRING
+                        ? Double.parseDouble(parser.getText())
+                        : numeric(parser, schema).getDoubleValue();
+            case BOOLEAN:
+                return parser -> {
+                    JsonToken token = parser.currentToken();
+                    expect(parser, token == JsonToken.VALUE_TRUE || token == JsonToken.VALUE_FALSE, schema);
+                    return token == JsonToken.VALUE_TRUE;
+                };
+            default:
+                throw new IllegalArgumentException("unsupported type " + schema.getType());
+        }
+    }
+
+    private static ValueDecoder arrayDecoder(Schema schema, ValueDecoder elementDecoder) {
+        return parser -> {
+            expect(parser, parser.currentToken() == JsonToken.START_ARRAY, schema);
+            List<Object> elements = new ArrayList<>();
+            while (parser.nextToken() != JsonToken.END_ARRAY) {
+                elements.add(elementDecoder.decode(parser));
+            }
+            return new GenericData.Array<>(schema, elements);
+        };
+    }
+
+    private static ValueDecoder mapDecoder(ValueDecoder valueDecoder) {
+        return parser -> {
+            if (parser.currentToken() != JsonToken.START_OBJECT) {
+                throw new JsonParseException(parser, "expected an object");
+            }
+            Map<String, Object> map = new LinkedHashMap<>();
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String key = parser.getCurrentName();
+                parser.nextToken();
+                map.put(key, valueDecoder.decode(parser));
+            }
+            return map;
+        };
+    }
+
+    private static ValueDecoder unionDecoder(Schema schema, Map<Schema, ValueDecoder> records) {
+        List<Schema> types = schema.getTypes();
+        ValueDecoder[] decoders = new ValueDecoder[types.size()];
+        for (int i = 0; i < decoders.length; i++) {
+            decoders[i] = compile(types.get(i), records);
+        }
+        return parser -> {
+            JsonToken token = parser.currentToken();
+            for (int i = 0; i < decoders.length; i++) {
+                if (accepts(types.get(i).getType(), token)) {
+                    return decoders[i].decode(parser);
+                }
+            }
+            throw new JsonParseException(parser, "unexpected " + token + " for " + schema);
+        };
+    }
+
+    private static boolean accepts(Schema.Type type, JsonToken token) {
+        switch (type) {
+            case NULL:
+                return token == JsonToken.VALUE_NULL;
+            case BOOLEAN:
+                return token == JsonToken.VALUE_TRUE || token == JsonToken.VALUE_FALSE;
+            case INT:
+            case LONG:
+                return token == JsonToken.VALUE_NUMBER_INT;
+            case FLOAT:
+            case DOUBLE:
+                return token == JsonToken.VALUE_NUMBER_INT || token == JsonToken.VALUE_NUMBER_FLOAT;
+            case STRING:
+            case ENUM:
+            case BYTES:
+                return token == JsonToken.VALUE_STRING;
+            case ARRAY:
+                return token == JsonToken.START_ARRAY;
+            case RECORD:
+            case MAP:
+                return token == JsonToken.START_OBJECT;
+            default:
+                return false;
+        }
+    }
+
+    private static void expect(JsonParser parser, boolean condition, Schema schema) throws IOException {
+        if (!condition) {
+            throw new JsonParseException(parser, "unexpected " + parser.currentToken() + " for " + schema);
+        }
+    }
+
+    private static JsonParser integral(JsonParser parser, Schema schema) throws IOException {
+        expect(parser, parser.currentToken() == JsonToken.VALUE_NUMBER_INT, schema);
+        return parser;
+    }
+
+    private static JsonParser numeric(JsonParser parser, Schema schema) throws IOException {
+        JsonToken token = parser.currentToken();
+        expect(parser, token == JsonToken.VALUE_NUMBER_INT || token == JsonToken.VALUE_NUMBER_FLOAT, schema);
+        return parser;
+    }
+
+    /**
+     * Decodes the object at the current token of the parser (START_OBJECT). The parser is left on the END_OBJECT.
+     */
+    GenericRecord decode(JsonParser parser) throws IOException {
+        return (GenericRecord) decoder.decode(parser);
+    }
+
+    @FunctionalInterface
+    private interface ValueDecoder {
+        Object decode(JsonParser parser) throws IOException;
+    }
+
+    private static class RecordDecoder implements ValueDecoder {
+
+        private final Schema schema;
+        private final Map<String, Integer> positions = new HashMap<>();
+        private final ValueDecoder[] decoders;
+        private final Object[] defaults;
+        private final boolean[] required;
+
+        private RecordDecoder(Schema schema) {
+            this.schema = schema;
+            List<Schema.Field> fields = schema.getFields();
+            this.decoders = new ValueDecoder[fields.size()];
+            this.defaults = new Object[fields.size()];
+            this.required = new boolean[fields.size()];
+        }
+
+        private static boolean isNullable(Schema schema) {
+            if (schema.getType() == Schema.Type.NULL) {
+                return true;
+            }
+            if (schema.getType() == Schema.Type.UNION) {
+                for (Schema type : schema.getTypes()) {
+                    if (type.getType() == Schema.Type.NULL) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+
+        private void compile(Map<Schema, ValueDecoder> records) {
+            for (Schema.Field field : schema.getFields()) {
+                int pos = field.pos();
+                positions.put(field.name(), pos);
+                decoders[pos] = JsonRecordDecoder.compile(field.schema(), records);
+                if (field.defaultVal() != null) {
+                    defaults[pos] = GenericData.get().getDefaultValue(field);
+                } else {
+                    required[pos] = !isNullable(field.schema());
+                }
+            }
+        }
+
+        @Override
+        public Object decode(JsonParser parser) throws IOException {
+            if (parser.currentToken() != JsonToken.START_OBJECT) {
+                throw new JsonParseException(parser, "expected an object for " + schema.getFullName());
+            }
+            GenericData.Record record = new GenericData.Record(schema);
+            boolean[] seen = new boolean[decoders.length];
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                Integer pos = positions.get(parser.getCurrentName());
+                parser.nextToken();
+                if (pos == null) {
+                    parser.skipChildren();
+                } else {
+                    record.put(pos, decoders[pos].decode(parser));
+                    seen[pos] = true;
+                }
+            }
+            for (int pos = 0; pos < seen.length; pos++) {
+                if (!seen[pos]) {
+                    if (required[pos]) {
+                        throw new JsonParseException(parser, "missing field "
+                                + schema.getFields().get(pos).name() + " in " + schema.getFullName());
+                    }
+                    record.put(pos, GenericData.get().deepCopy(schema.getFields().get(pos).schema(),
+                            defaults[pos]));
+                }
+            }
+            return record;
+        }
+    }
+}
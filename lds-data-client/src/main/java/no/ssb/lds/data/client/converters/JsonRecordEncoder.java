@@ -0,0 +1,174 @@
+package no.ssb.lds.data.client.converters;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.io.SerializedString;
+import org.apache.avro.Schema;
+import org.apache.avro.generic.GenericData;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.avro.util.Utf8;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes {@link GenericRecord}s to a {@link JsonGenerator}, the counterpart of {@link JsonRecordDecoder}.
+ * <p>
+ * The encoders are compiled once from the schema and write the values straight to the generator, without any
+ * intermediate string. Union values are written without type wrapper, bytes are base64 encoded and the special
+ * floating point values (NaN, infinity) are written as strings so the output is always valid JSON.
+ */
+class JsonRecordEncoder {
+
+    private final ValueEncoder encoder;
+
+    JsonRecordEncoder(Schema schema) {
+        if (schema.getType() != Schema.Type.RECORD) {
+            throw new IllegalArgumentException("schema must be a record");
+        }
+        this.encoder = compile(schema, new IdentityHashMap<>());
+    }
+
+    private static ValueEncoder compile(Schema schema, Map<Schema, ValueEncoder> records) {
+        switch (schema.getType()) {
+            case RECORD:
+                ValueEncoder compiled = records.get(schema);
+                if (compiled == null) {
+                    // Recursive schemas refer to the encoder being compiled.
+                    RecordEncoder recordEncoder = new RecordEncoder(schema);
+                    records.put(schema, recordEncoder);
+                    recordEncoder.compile(records);
+                    compiled = recordEncoder;
+                }
+                return compiled;
+            case ARRAY:
+                ValueEncoder elementEncoder = compile(schema.getElementType(), records);
+                return (generator, value) -> {
+                    generator.writeStartArray();
+                    for (Object element : (Collection<?>) value) {
+                        elementEncoder.encode(generator, element);
+                    }
+                    generator.writeEndArray();
+                };
+            case MAP:
+                ValueEncoder valueEncoder = compile(schema.getValueType(), records);
+                return (generator, value) -> {
+                    generator.writeStartObject();
+                    for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                        generator.writeFieldName(entry.getKey().toString());
+                        valueEncoder.encode(generator, entry.getValue());
+                    }
+                    generator.writeEndObject();
+                };
+            case UNION:
+                List<Schema> types = schema.getTypes();
+                ValueEncoder[] encoders = new ValueEncoder[types.size()];
+                for (int i = 0; i < encoders.length; i++) {
+                    encoders[i] = compile(types.get(i), records);
+                }
+                return (generator, value) -> encoders[GenericData.get().resolveUnion(schema, value)]
+                        .encode(generator, value);
+            case NULL:
+                return (generator, value) -> generator.writeNull();
+            case STRING:
+                return (generator, value) -> {
+                    if (value instanceof Utf8) {
+                        Utf8 utf8 = (Utf8) value;
+                        generator.writeUTF8String(utf8.getBytes(), 0, utf8.getByteLength());
+                    } else {
+                        generator.writeString(value.toString());
+                    }
+                };
+            case ENUM:
+                return (generator, value) -> generator.writeString(value.toString());
+            case BYTES:
+                return (generator, value) -> {
+                    ByteBuffer buffer = (ByteBuffer) value;
+                    if (buffer.hasArray()) {
+                        generator.writeBinary(buffer.array(), buffer.arrayOffset() + buffer.position(),
+                                buffer.remaining());
+                    } else {
+                        byte[] bytes = new byte[buffer.remaining()];
+                        buffer.duplicate().get(bytes);
+                        generator.writeBinary(bytes);
+                    }
+                };
+            case FIXED:
+                return (generator, value) -> generator.writeBinary(((GenericData.Fixed) value).bytes());
+            case INT:
+                return (generator, value) -> generator.writeNumber((Integer) value);
+            case LONG:
+                return (generator, value) -> generator.writeNumber((Long) value);
+            case FLOAT:
+                return (generator, value) -> {
+                    float number = (Float) value;
+                    if (Float.isFinite(number)) {
+                        generator.writeNumber(number);
+                    } else {
+                        generator.writeString(Float.toString(number));
+                    }
+                };
+            case DOUBLE:
+                return (generator, value) -> {
+                    double number = (Double) value;
+                    if (Double.isFinite(number)) {
+                        generator.writeNumber(number);
+                    } else {
+                        generator.writeString(Double.toString(number));
+                    }
+                };
+            case BOOLEAN:
+                return (generator, value) -> generator.writeBoolean((Boolean) value);
+            default:
+                throw new IllegalArgumentException("unsupported type " + schema.getType());
+        }
+    }
+
+    /**
+     * Writes the record as a JSON object.
+     */
+    void encode(JsonGenerator generator, GenericRecord record) throws IOException {
+        encoder.encode(generator, record);
+    }
+
+    @FunctionalInterface
+    private interface ValueEncoder {
+        void encode(JsonGenerator generator, Object value) throws IOException;
+    }
+
+    private static class RecordEncoder implements ValueEncoder {
+
+        private final Schema schema;
+        // Field names are escaped and encoded once.
+        private final SerializableString[] names;
+        private final ValueEncoder[] encoders;
+
+        private RecordEncoder(Schema schema) {
+            this.schema = schema;
+            this.names = new SerializableString[schema.getFields().size()];
+            this.encoders = new ValueEncoder[names.length];
+        }
+
+        private void compile(Map<Schema, ValueEncoder> records) {
+            for (Schema.Field field : schema.getFields()) {
+                names[field.pos()] = new SerializedString(field.name());
+                encoders[field.pos()] = JsonRecordEncoder.compile(field.schema(), records);
+            }
+        }
+
+        @Override
+        public void encode(JsonGenerator generator, Object value) throws IOException {
+            GenericRecord record = (GenericRecord) value;
+            generator.writeStartObject();
+            for (int pos = 0; pos < names.length; pos++) {
+                generator.writeFieldName(names[pos]);
+                encoders[pos].encode(generator, record.get(pos));
+            }
+            generator.writeEndObject();
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package no.ssb.lds.data.client.converters;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.reactivex.Completable;
+import io.reactivex.Flowable;
+import io.reactivex.Scheduler;
+import io.reactivex.schedulers.Schedulers;
+import org.apache.avro.Schema;
+import org.apache.avro.generic.GenericRecord;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Converts newline delimited JSON (NDJSON), one object per line.
+ * <p>
+ * Since the lines are independent, the input is split in blocks of lines that are decoded concurrently and the
+ * output is encoded in batches of records concurrently. The records and the lines keep their order, and at most
+ * parallelism blocks or batches are in memory at any time.
+ */
+public class NdjsonConverter implements FormatConverter {
+
+    public static final int DEFAULT_BLOCK_SIZE = 1024 * 1024;
+    public static final int DEFAULT_BATCH_SIZE = 1024;
+
+    private static final String MEDIA_TYPE = "application/x-ndjson";
+
+    private final ObjectMapper mapper;
+    private final int parallelism;
+    private final int blockSize;
+    private final int batchSize;
+    private final Scheduler scheduler;
+
+    public NdjsonConverter(ObjectMapper mapper) {
+        this(mapper, Runtime.getRuntime().availableProcessors(), DEFAULT_BLOCK_SIZE, DEFAULT_BATCH_SIZE,
+                Schedulers.computation());
+    }
+
+    /**
+     * Create a new converter.
+     *
+     * @param mapper      the mapper used to create the parsers and generators.
+     * @param parallelism the number of blocks decoded or batches encoded concurrently.
+     * @param blockSize   the minimum size in bytes of the blocks of lines decoded together.
+     * @param batchSize   the number of records encoded together.
+     * @param scheduler   the scheduler the blocks and batches are converted on.
+     */
+    public NdjsonConverter(ObjectMapper mapper, int parallelism, int blockSize, int batchSize, Scheduler scheduler) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism must be at least 1");
+        }
+        if (blockSize < 1 || batchSize < 1) {
+            throw new IllegalArgumentException("blockSize and batchSize must be positive");
+        }
+        this.mapper = Objects.requireNonNull(mapper);
+        this.parallelism = parallelism;
+        this.blockSize = blockSize;
+        this.batchSize = batchSize;
+        this.scheduler = Objects.requireNonNull(scheduler);
+    }
+
+    @Override
+    public boolean doesSupport(String mediaType) {
+        if (mediaType == null) {
+            return false;
+        }
+        return mediaType.startsWith(MEDIA_TYPE);
+    }
+
+    @Override
+    public String getMediaType() {
+        return MEDIA_TYPE;
+    }
+
+    private List<GenericRecord> decodeBlock(byte[] block, JsonRecordDecoder decoder) throws IOException {
+        List<GenericRecord> records = new ArrayList<>();
+        try (JsonParser parser = mapper.getFactory().createParser(block)) {
+            JsonToken token;
+            while ((token = parser.nextToken()) != null) {
+                if (token != JsonToken.START_OBJECT) {
+                    throw new JsonParseException(parser, "expected an object");
+                }
+                records.add(decoder.decode(parser));
+            }
+        }
+        return records;
+    }
+
+    private byte[] encodeBatch(List<GenericRecord> records, JsonRecordEncoder encoder) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try (JsonGenerator generator = mapper.getFactory().createGenerator(output)) {
+            generator.setRootValueSeparator(null);
+            for (GenericRecord record : records) {
+                encoder.encode(generator, record);
+                generator.writeRaw('\n');
+            }
+        }
+        return output.toByteArray();
+    }
+
+    @Override
+    public Flowable<GenericRecord> read(InputStream input, String mimeType, Schema schema) {
+        return Flowable.defer(() -> {
+            JsonRecordDecoder decoder = new JsonRecordDecoder(schema);
+            BlockSplitter splitter = BlockSplitter.lines(input, blockSize);
+            Flowable<byte[]> blocks = Flowable.generate(emitter -> {
+                byte[] block = splitter.next();
+                if (block == null) {
+                    emitter.onComplete();
+                } else {
+                    emitter.onNext(block);
+                }
+            });
+            return blocks.concatMapEager(block -> Flowable.fromCallable(() -> decodeBlock(block, decoder))
+                    .subscribeOn(scheduler), parallelism, 1)
+                    .concatMapIterable(records -> records);
+        });
+    }
+
+    @Override
+    public Completable write(Flowable<GenericRecord> records, OutputStream output, String mimeType, Schema schema) {
+        return Completable.defer(() -> {
+            JsonRecordEncoder encoder = new JsonRecordEncoder(schema);
+            return records.buffer(batchSize)
+                    .concatMapEager(batch -> Flowable.fromCallable(() -> encodeBatch(batch, encoder))
+                            .subscribeOn(scheduler), parallelism, 1)
+                    .doOnNext(output::write)
+                    .doOnComplete(output::flush)
+                    .ignoreElements();
+        });
+    }
+}
@@ -0,0 +1,164 @@
+package no.ssb.lds.data.client;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.SeekableByteChannel;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ChannelSeekableInputStreamTest {
+
+    private byte[] content;
+    private ArrayChannel channel;
+
+    @BeforeEach
+    void setUp() {
+        content = new byte[10_000];
+        for (int i = 0; i < content.length; i++) {
+            content[i] = (byte) i;
+        }
+        channel = new ArrayChannel(content);
+    }
+
+    @Test
+    void testSmallReadsAreCoalesced() throws IOException {
+        ChannelSeekableInputStream stream = new ChannelSeekableInputStream(channel, 1024);
+
+        byte[] first = new byte[100];
+        stream.seek(1000);
+        stream.readFully(first);
+        // A gap smaller than the buffer.
+        stream.seek(1500);
+        ByteBuffer second = ByteBuffer.allocate(200);
+        stream.readFully(second);
+
+        assertThat(channel.reads).isEqualTo(1);
+        assertThat(first[0]).isEqualTo(content[1000]);
+        assertThat(second.get(199)).isEqualTo(content[1699]);
+        assertThat(stream.getPos()).isEqualTo(1700);
+
+        // Partly buffered.
+        ByteBuffer third = ByteBuffer.allocate(500);
+        stream.readFully(third);
+        assertThat(channel.reads).isEqualTo(2);
+        assertThat(third.get(499)).isEqualTo(content[2199]);
+    }
+
+    @Test
+    void testSingleByteReads() throws IOException {
+        ChannelSeekableInputStream stream = new ChannelSeekableInputStream(channel, 1024);
+
+        stream.seek(9_000);
+        for (int i = 9_000; i < content.length; i++) {
+            assertThat(stream.read()).isEqualTo(content[i] & 0xFF);
+        }
+        assertThat(stream.read()).isEqualTo(-1);
+        // Served from the read-ahead buffer.
+        assertThat(channel.reads).isEqualTo(1);
+
+        ChannelSeekableInputStream unbuffered = new ChannelSeekableInputStream(channel, 0);
+        unbuffered.seek(9_999);
+        assertThat(unbuffered.read()).isEqualTo(content[9_999] & 0xFF);
+        assertThat(unbuffered.read()).isEqualTo(-1);
+    }
+
+    @Test
+    void testLargeReadsGoToTheChannel() throws IOException {
+        ChannelSeekableInputStream stream = new ChannelSeekableInputStream(channel, 1024);
+
+        stream.seek(3000);
+        ByteBuffer direct = ByteBuffer.allocateDirect(4000);
+        stream.readFully(direct);
+
+        assertThat(channel.reads).isEqualTo(1);
+        assertThat(channel.bytes).isEqualTo(4000);
+        assertThat(direct.get(0)).isEqualTo(content[3000]);
+        assertThat(direct.get(3999)).isEqualTo(content[6999]);
+    }
+
+    @Test
+    void testEndOfChannel() throws IOException {
+        // Like SeekableReadChannel, returns -1 with the last bytes.
+        channel.eofWithLastBytes = true;
+        ChannelSeekableInputStream stream = new ChannelSeekableInputStream(channel, 1024);
+
+        stream.seek(9_990);
+        byte[] tail = new byte[10];
+        stream.readFully(tail);
+        assertThat(tail[9]).isEqualTo(content[9_999]);
+        assertThat(stream.read()).isEqualTo(-1);
+
+        ChannelSeekableInputStream unbuffered = new ChannelSeekableInputStream(channel, 0);
+        unbuffered.seek(8_000);
+        unbuffered.readFully(ByteBuffer.allocate(2_000));
+        unbuffered.seek(9_000);
+        assertThatThrownBy(() -> unbuffered.readFully(new byte[2_000])).isInstanceOf(EOFException.class);
+    }
+
+    private static class ArrayChannel implements SeekableByteChannel {
+
+        private final byte[] content;
+        private int pos = 0;
+        private int reads = 0;
+        private long bytes = 0;
+        private boolean eofWithLastBytes = false;
+
+        private ArrayChannel(byte[] content) {
+            this.content = content;
+        }
+
+        @Override
+        public int read(ByteBuffer dst) {
+            if (pos >= content.length) {
+                return -1;
+            }
+            reads++;
+            int count = Math.min(dst.remaining(), content.length - pos);
+            dst.put(content, pos, count);
+            pos += count;
+            bytes += count;
+            return eofWithLastBytes && pos >= content.length ? -1 : count;
+        }
+
+        @Override
+        public int write(ByteBuffer src) {
+            throw new NonWritableChannelException();
+        }
+
+        @Override
+        public long position() {
+            return pos;
+        }
+
+        @Override
+        public SeekableByteChannel position(long newPosition) {
+            pos = Math.toIntExact(newPosition);
+            return this;
+        }
+
+        @Override
+        public long size() {
+            return content.length;
+        }
+
+        @Override
+        public SeekableByteChannel truncate(long size) {
+            throw new NonWritableChannelException();
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -4,6 +4,7 @@ import io.reactivex.Flowable;
 import io.reactivex.Observable;
 import io.reactivex.Single;
 import org.apache.avro.Schema;
+import org.apache.avro.SchemaBuilder;
 import org.apache.avro.generic.GenericData;
 import org.apache.avro.generic.GenericRecord;
 import org.apache.avro.generic.GenericRecordBuilder;
@@ -13,16 +14,23 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
 import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Comparator;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Random;
+import java.util.Set;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
 public class DataClientTest {
 
@@ -38,6 +46,8 @@ public class DataClientTest {
     private DataClient client;
     private String prefix;
     private GenericRecordBuilder recordBuilder;
+    private final AtomicLong opened = new AtomicLong();
+    private final AtomicLong versionLookups = new AtomicLong();
 
     @BeforeEach
     void setUp() throws IOException {
@@ -83,6 +93,700 @@ public class DataClientTest {
 
     }
 
+    @Test
+    void testCursorPagesAcrossRowGroups() {
+
+        Flowable<GenericRecord> records = generateRecords(1000);
+        client.writeAllData("test", DIMENSIONAL_SCHEMA, records, "").blockingAwait();
+
+        List<Object> all = client.readData("test", DIMENSIONAL_SCHEMA, "", null)
+                .map(record -> record.get("int")).toList().blockingGet();
+
+        for (long after = 1; after <= 1000; after += 37) {
+            List<Object> page = client.readData("test", DIMENSIONAL_SCHEMA, "", new Cursor<>(50, after))
+                    .map(record -> record.get("int")).toList().blockingGet();
+            int from = (int) after - 1;
+            assertThat(page).containsExactlyElementsOf(all.subList(from, Math.min(from + 50, all.size())));
+        }
+
+        assertThat(client.readData("test", DIMENSIONAL_SCHEMA, "", new Cursor<>(10, 2000L)).toList()
+                .blockingGet()).isEmpty();
+    }
+
+    @Test
+    void testCursorOnlyReadsNeededRowGroups() throws IOException {
+
+        AtomicLong bytesRead = new AtomicLong();
+        DataClient countingClient = createCountingClient(bytesRead);
+
+        Flowable<GenericRecord> records = generateRecords(100_000);
+        countingClient.writeAllData("test", DIMENSIONAL_SCHEMA, records, "").blockingAwait();
+        long fileSize;
+        try (SeekableByteChannel channel = new LocalBackend(prefix).read(prefix + "test")) {
+            fileSize = channel.size();
+        }
+
+        bytesRead.set(0);
+        GenericRecord first = countingClient.readData("test", DIMENSIONAL_SCHEMA, "", new Cursor<>(10, 1L))
+                .firstOrError().blockingGet();
+        long firstPageBytes = bytesRead.get();
+
+        bytesRead.set(0);
+        GenericRecord deep = countingClient.readData("test", DIMENSIONAL_SCHEMA, "", new Cursor<>(10, 99_000L))
+                .firstOrError().blockingGet();
+        long deepPageBytes = bytesRead.get();
+
+        assertThat(first.get("int")).isEqualTo(1);
+        assertThat(deep.get("int")).isEqualTo(99_000);
+        // The latency of a page depends on the bytes read, not on the offset.
+        assertThat(deepPageBytes).isLessThan(fileSize / 4);
+        assertThat(deepPageBytes).isLessThan(firstPageBytes * 2);
+    }
+
+    @Test
+    void testProjection() {
+
+        AtomicLong bytesRead = new AtomicLong();
+        DataClient countingClient = createCountingClient(bytesRead);
+
+        Flowable<GenericRecord> records = generateRecords(10_000);
+        countingClient.writeAllData("test", DIMENSIONAL_SCHEMA, records, "").blockingAwait();
+
+        bytesRead.set(0);
+        countingClient.readData("test", DIMENSIONAL_SCHEMA, "", null).blockingSubscribe();
+        long allColumnsBytes = bytesRead.get();
+
+        Schema projection = Schema.createRecord("root", "...", "no.ssb.dataset", false, List.of(
+                new Schema.Field("int", Schema.create(Schema.Type.INT), "An int", (Object) null),
+                new Schema.Field("long", Schema.create(Schema.Type.LONG), "A long", (Object) null)
+        ));
+
+        bytesRead.set(0);
+        List<GenericRecord> projected = countingClient.readData("test", projection, "", null)
+                .toList().blockingGet();
+        long projectedBytes = bytesRead.get();
+
+        assertThat(projected).hasSize(10_000);
+        assertThat(projected.get(41).getSchema()).isEqualTo(projection);
+        assertThat(projected.get(41).get("int")).isEqualTo(42);
+        assertThat(projected.get(41).get("long")).isEqualTo(123L);
+        assertThat(projectedBytes).isLessThan(allColumnsBytes);
+    }
+
+    @Test
+    void testPrefetchRowGroups() throws IOException {
+
+        Flowable<GenericRecord> records = generateRecords(10_000);
+        client.writeAllData("test", DIMENSIONAL_SCHEMA, records, "").blockingAwait();
+        int rowGroups = client.readMetadata("test", "").getBlocks().size();
+
+        List<List<Range>> batches = Collections.synchronizedList(new ArrayList<>());
+        List<String> versions = Collections.synchronizedList(new ArrayList<>());
+        BinaryBackend backend = new CountingBackend(new LocalBackend(prefix), new AtomicLong()) {
+            @Override
+            public List<ByteBuffer> readRanges(String path, String version, List<Range> ranges) throws IOException {
+                batches.add(ranges);
+                versions.add(version);
+                return super.readRanges(path, version, ranges);
+            }
+        };
+        DataClient.Configuration configuration = new DataClient.Configuration();
+        configuration.setLocation(prefix);
+        configuration.setPrefetchRowGroups(true);
+        DataClient prefetchingClient = DataClient.builder()
+                .withParquetProvider(new ParquetProvider(new ParquetProvider.Configuration()))
+                .withBinaryBackend(backend)
+                .withConfiguration(configuration)
+                .build();
+
+        Schema projection = SchemaBuilder.record("root").namespace("no.ssb.dataset").fields()
+                .requiredInt("int")
+                .requiredLong("long")
+                .endRecord();
+        List<Object> ints = prefetchingClient.readData("test", projection, "", null)
+                .map(record -> record.get("int")).toList().blockingGet();
+
+        assertThat(ints).containsExactlyElementsOf(client.readData("test", projection, "", null)
+                .map(record -> record.get("int")).toList().blockingGet());
+        // One batch with the two projected chunks per row group.
+        assertThat(batches).hasSize(rowGroups);
+        assertThat(batches).allSatisfy(ranges -> assertThat(ranges).hasSize(2));
+        // The chunks are read from the version the footer was read from.
+        assertThat(versions).doesNotContainNull();
+
+        batches.clear();
+        List<Object> filtered = prefetchingClient.readData("test", projection, "", null, RowFilter.gt("int", 9_998))
+                .map(record -> record.get("int")).toList().blockingGet();
+        assertThat(filtered).containsExactly(9_999, 10_000);
+        assertThat(batches).hasSize(1);
+
+        // The statistics ("a" to "c") keep every row group, the dictionary filter drops them without fetching.
+        Flowable<GenericRecord> strings = generateRecords(10_000)
+                .map(record -> {
+                    record.put("string", (Integer) record.get("int") % 2 == 0 ? "a" : "c");
+                    return record;
+                });
+        client.writeAllData("strings", DIMENSIONAL_SCHEMA, strings, "").blockingAwait();
+        Schema stringProjection = SchemaBuilder.record("root").namespace("no.ssb.dataset").fields()
+                .requiredString("string")
+                .requiredInt("int")
+                .endRecord();
+        batches.clear();
+        assertThat(prefetchingClient.readData("strings", stringProjection, "", null, RowFilter.eq("string", "b"))
+                .toList().blockingGet()).isEmpty();
+        assertThat(batches).isEmpty();
+        assertThat(prefetchingClient.readData("strings", stringProjection, "", null, RowFilter.eq("string", "a"))
+                .toList().blockingGet()).hasSize(5_000);
+        assertThat(batches).isNotEmpty();
+    }
+
+    @Test
+    void testFilter() {
+
+        AtomicLong bytesRead = new AtomicLong();
+        DataClient countingClient = createCountingClient(bytesRead);
+
+        Flowable<GenericRecord> records = generateRecords(100_000);
+        countingClient.writeAllData("test", DIMENSIONAL_SCHEMA, records, "").blockingAwait();
+
+        bytesRead.set(0);
+        countingClient.readData("test", DIMENSIONAL_SCHEMA, "", null).blockingSubscribe();
+        long allBytes = bytesRead.get();
+
+        bytesRead.set(0);
+        List<GenericRecord> single = countingClient.readData("test", DIMENSIONAL_SCHEMA, "", null,
+                RowFilter.eq("int", 5000)).toList().blockingGet();
+        long filteredBytes = bytesRead.get();
+
+        assertThat(single).extracting(record -> record.get("int")).containsExactly(5000);
+        // Row groups that cannot contain the value are skipped using the statistics.
+        assertThat(filteredBytes).isLessThan(allBytes / 2);
+
+        List<Object> combined = countingClient.readData("test", DIMENSIONAL_SCHEMA, "", null,
+                RowFilter.and(
+                        RowFilter.gt("int", 10),
+                        RowFilter.ltEq("int", 20),
+                        RowFilter.not(RowFilter.in("int", 12, 14)),
+                        RowFilter.eq("string", "foo")
+                )).map(record -> record.get("int")).toList().blockingGet();
+        assertThat(combined).containsExactly(11, 13, 15, 16, 17, 18, 19, 20);
+
+        List<Object> page = countingClient.readData("test", DIMENSIONAL_SCHEMA, "", new Cursor<>(2, 3L),
+                RowFilter.gtEq("int", 100)).map(record -> record.get("int")).toList().blockingGet();
+        assertThat(page).containsExactly(102, 103);
+
+        // String literals are converted to the type of the column, like for the partition values.
+        List<Object> literals = countingClient.readData("test", DIMENSIONAL_SCHEMA, "", null,
+                RowFilter.and(RowFilter.gt("int", "99997"), RowFilter.eq("long", "123"),
+                        RowFilter.ltEq("double", "200.5"), RowFilter.gt("float", "1")))
+                .map(record -> record.get("int")).toList().blockingGet();
+        assertThat(literals).containsExactly(99_998, 99_999, 100_000);
+    }
+
+    @Test
+    void testReadParallel() {
+
+        Flowable<GenericRecord> records = generateRecords(10_000);
+        client.writeAllData("test", DIMENSIONAL_SCHEMA, records, "").blockingAwait();
+
+        List<Object> expected = client.readData("test", DIMENSIONAL_SCHEMA, "", null)
+                .map(record -> record.get("int")).toList().blockingGet();
+
+        List<Object> ordered = client.readDataParallel("test", DIMENSIONAL_SCHEMA, "", null, true)
+                .map(record -> record.get("int")).toList().blockingGet();
+        assertThat(ordered).containsExactlyElementsOf(expected);
+
+        List<Object> unordered = client.readDataParallel("test", DIMENSIONAL_SCHEMA, "", null, false)
+                .map(record -> record.get("int")).toList().blockingGet();
+        assertThat(unordered).containsExactlyInAnyOrderElementsOf(expected);
+
+        List<Object> filtered = client.readDataParallel("test", DIMENSIONAL_SCHEMA, "",
+                RowFilter.gt("int", 9_990), true).map(record -> record.get("int")).toList().blockingGet();
+        assertThat(filtered).containsExactly(9_991, 9_992, 9_993, 9_994, 9_995, 9_996, 9_997, 9_998, 9_999, 10_000);
+    }
+
+    @Test
+    void testReadColumns() {
+
+        Flowable<GenericRecord> records = generateRecords(10_000);
+        client.writeAllData("test", DIMENSIONAL_SCHEMA, records, "").blockingAwait();
+
+        List<ColumnBatch> batches = client.readColumns("test", DIMENSIONAL_SCHEMA, "", null).toList().blockingGet();
+        assertThat(batches.size()).isGreaterThan(1);
+        assertThat(batches.stream().mapToInt(ColumnBatch::getRowCount).sum()).isEqualTo(10_000);
+
+        long sum = 0;
+        for (ColumnBatch batch : batches) {
+            ColumnVector ints = batch.getColumn("int");
+            assertThat(ints.hasNulls()).isFalse();
+            for (int value : ints.getInts()) {
+                sum += value;
+            }
+            assertThat(batch.getColumn("string").getString(0)).isEqualTo("foo");
+            assertThat(batch.getColumn("double").getDoubles()[0]).isEqualTo(123.123D);
+            assertThat(batch.getColumn("boolean").getBooleans()[0]).isTrue();
+        }
+        assertThat(sum).isEqualTo(10_000L * 10_001 / 2);
+
+        // Row groups are pruned but the rows are not filtered.
+        List<ColumnBatch> filtered = client.readColumns("test", DIMENSIONAL_SCHEMA, "", RowFilter.gt("int", 9_990))
+                .toList().blockingGet();
+        assertThat(filtered).hasSize(1);
+        int[] last = filtered.get(0).getColumn("int").getInts();
+        assertThat(last[last.length - 1]).isEqualTo(10_000);
+    }
+
+    @Test
+    void testReadColumnsWithNulls() {
+
+        Schema schema = SchemaBuilder.record("nullable").fields()
+                .optionalLong("long")
+                .optionalString("string")
+                .endRecord();
+        GenericRecordBuilder builder = new GenericRecordBuilder(schema);
+        Flowable<GenericRecord> records = Flowable.range(0, 100).map(i -> builder
+                .set("long", i % 3 == 0 ? null : (long) i)
+                .set("string", i % 5 == 0 ? null : "value " + i)
+                .build());
+        client.writeAllData("nullable", schema, records, "").blockingAwait();
+
+        Schema projection = SchemaBuilder.record("nullable").fields()
+                .optionalLong("long")
+                .endRecord();
+        List<ColumnBatch> batches = client.readColumns("nullable", projection, "", null).toList().blockingGet();
+
+        assertThat(batches.get(0).getColumns()).extracting(ColumnVector::getName).containsExactly("long");
+        ColumnVector longs = batches.get(0).getColumn("long");
+        assertThat(longs.getType()).isEqualTo(Schema.Type.LONG);
+        assertThat(longs.isNull(0)).isTrue();
+        assertThat(longs.isNull(1)).isFalse();
+        assertThat(longs.getLongs()[1]).isEqualTo(1L);
+        assertThat(longs.isNull(3)).isTrue();
+
+        ColumnVector strings = client.readColumns("nullable", schema, "", null).blockingFirst().getColumn("string");
+        assertThat(strings.isNull(5)).isTrue();
+        assertThat(strings.getString(5)).isNull();
+        assertThat(strings.getString(6)).isEqualTo("value 6");
+        assertThatThrownBy(strings::getLongs).isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    void testReadDataReusingRecords() throws IOException {
+
+        Schema schema = SchemaBuilder.record("nullable").fields()
+                .requiredInt("int")
+                .optionalString("string")
+                .endRecord();
+        GenericRecordBuilder builder = new GenericRecordBuilder(schema);
+        try (DataClient.DataWriter writer = client.writeData("reuse", schema, "")) {
+            for (int i = 0; i < 1000; i++) {
+                writer.save(builder.set("int", i).set("string", i % 2 == 0 ? null : "value " + i).build());
+            }
+        }
+
+        Set<GenericRecord> instances = Collections.newSetFromMap(new IdentityHashMap<>());
+        List<String> values = client.readData("reuse", schema, "", null, null, true)
+                .doOnNext(instances::add)
+                .map(record -> record.get("int") + ":" + record.get("string"))
+                .toList().blockingGet();
+
+        assertThat(instances).hasSize(1);
+        assertThat(values).hasSize(1000);
+        // The fields that are null in a row are cleared.
+        assertThat(values.subList(0, 3)).containsExactly("0:null", "1:value 1", "2:null");
+
+        List<Object> page = client.readData("reuse", schema, "", new Cursor<>(3, 11L), null, true)
+                .map(record -> record.get("int")).toList().blockingGet();
+        assertThat(page).containsExactly(10, 11, 12);
+
+        List<Object> filtered = client.readData("reuse", schema, "", null, RowFilter.gt("int", 996), true)
+                .map(record -> record.get("int")).toList().blockingGet();
+        assertThat(filtered).containsExactly(997, 998, 999);
+    }
+
+    @Test
+    void testFooterCache() throws IOException {
+
+        AtomicLong bytesRead = new AtomicLong();
+        DataClient countingClient = createCountingClient(bytesRead);
+
+        Flowable<GenericRecord> records = generateRecords(100_000);
+        countingClient.writeAllData("test", DIMENSIONAL_SCHEMA, records, "").blockingAwait();
+
+        bytesRead.set(0);
+        ParquetMetadata metadata = countingClient.readMetadata("test", "");
+        assertThat(bytesRead.get()).isGreaterThan(0);
+
+        bytesRead.set(0);
+        opened.set(0);
+        assertThat(countingClient.readMetadata("test", "")).isSameAs(metadata);
+        assertThat(bytesRead.get()).isEqualTo(0);
+        // The file is not even opened.
+        assertThat(opened.get()).isEqualTo(0);
+
+        // Only the row group is read, the footer comes from the cache.
+        GenericRecord deep = countingClient.readData("test", DIMENSIONAL_SCHEMA, "", new Cursor<>(1, 99_000L))
+                .firstOrError().blockingGet();
+        assertThat(deep.get("int")).isEqualTo(99_000);
+        long lastBlockSize = metadata.getBlocks().get(metadata.getBlocks().size() - 1).getCompressedSize();
+        assertThat(bytesRead.get()).isLessThan(lastBlockSize * 2);
+
+        // A new version of the file invalidates the cache.
+        countingClient.writeAllData("test2", DIMENSIONAL_SCHEMA, generateRecords(10), "").blockingAwait();
+        new LocalBackend(prefix).move(prefix + "test2", prefix + "test");
+        assertThat(countingClient.readData("test", DIMENSIONAL_SCHEMA, "", null).count().blockingGet())
+                .isEqualTo(10);
+    }
+
+    @Test
+    void testMultiFileDataset() throws IOException {
+
+        DataClient.Configuration clientConfiguration = new DataClient.Configuration();
+        clientConfiguration.setLocation(prefix);
+        clientConfiguration.setPartMaxRecords(1000L);
+        ParquetProvider.Configuration parquetConfiguration = new ParquetProvider.Configuration();
+        parquetConfiguration.setPageSize(128);
+        parquetConfiguration.setRowGroupSize(8 * 128);
+        LocalBackend backend = new LocalBackend(prefix);
+        DataClient partitionedClient = DataClient.builder()
+                .withParquetProvider(new ParquetProvider(parquetConfiguration))
+                .withBinaryBackend(backend)
+                .withConfiguration(clientConfiguration)
+                .build();
+
+        partitionedClient.writeAllData("dataset", DIMENSIONAL_SCHEMA, generateRecords(10_500), "").blockingAwait();
+
+        assertThat(backend.list(prefix + "dataset/").toList().blockingGet()).hasSize(11);
+
+        // Any client can read the dataset.
+        List<Object> all = client.readData("dataset", DIMENSIONAL_SCHEMA, "", null)
+                .map(record -> record.get("int")).toList().blockingGet();
+        assertThat(all).containsExactlyElementsOf(generateRecords(10_500).map(record -> record.get("int"))
+                .toList().blockingGet());
+
+        List<Object> page = client.readData("dataset", DIMENSIONAL_SCHEMA, "", new Cursor<>(5, 998L))
+                .map(record -> record.get("int")).toList().blockingGet();
+        assertThat(page).containsExactly(998, 999, 1000, 1001, 1002);
+
+        List<Object> filtered = client.readData("dataset", DIMENSIONAL_SCHEMA, "", null,
+                RowFilter.in("int", 5, 5_005, 10_005)).map(record -> record.get("int")).toList().blockingGet();
+        assertThat(filtered).containsExactly(5, 5_005, 10_005);
+
+        List<Object> parallel = client.readDataParallel("dataset", DIMENSIONAL_SCHEMA, "", null, true)
+                .map(record -> record.get("int")).toList().blockingGet();
+        assertThat(parallel).containsExactlyElementsOf(all);
+
+        // The versions of the parts come with the listing, not from one lookup per part.
+        versionLookups.set(0);
+        assertThat(createCountingClient(new AtomicLong()).readData("dataset", DIMENSIONAL_SCHEMA, "", null)
+                .count().blockingGet()).isEqualTo(10_500);
+        assertThat(versionLookups.get()).isZero();
+
+        long rows = 0;
+        for (BlockMetaData block : client.readMetadata("dataset", "").getBlocks()) {
+            rows += block.getRowCount();
+        }
+        assertThat(rows).isEqualTo(10_500);
+    }
+
+    @Test
+    void testRewriteReplacesPreviousData() throws IOException {
+
+        DataClient.Configuration clientConfiguration = new DataClient.Configuration();
+        clientConfiguration.setLocation(prefix);
+        clientConfiguration.setPartMaxRecords(1000L);
+        LocalBackend backend = new LocalBackend(prefix);
+        DataClient partitionedClient = DataClient.builder()
+                .withParquetProvider(new ParquetProvider(new ParquetProvider.Configuration()))
+                .withBinaryBackend(backend)
+                .withConfiguration(clientConfiguration)
+                .build();
+
+        // Single file replaced by parts.
+        client.writeAllData("dataset", DIMENSIONAL_SCHEMA, generateRecords(10), "").blockingAwait();
+        partitionedClient.writeAllData("dataset", DIMENSIONAL_SCHEMA, generateRecords(3_500), "").blockingAwait();
+        assertThat(client.readData("dataset", DIMENSIONAL_SCHEMA, "", null).count().blockingGet())
+                .isEqualTo(3_500);
+
+        // Fewer parts.
+        partitionedClient.writeAllData("dataset", DIMENSIONAL_SCHEMA, generateRecords(1_500), "").blockingAwait();
+        assertThat(backend.list(prefix + "dataset/").toList().blockingGet()).containsExactlyInAnyOrder(
+                prefix + "dataset/part-00000.parquet",
+                prefix + "dataset/part-00001.parquet"
+        );
+        List<Object> ints = client.readData("dataset", DIMENSIONAL_SCHEMA, "", null)
+                .map(record -> record.get("int")).toList().blockingGet();
+        assertThat(ints).hasSize(1_500).doesNotContain(1_501);
+
+        // Parts replaced by a single file.
+        client.writeAllData("dataset", DIMENSIONAL_SCHEMA, generateRecords(10), "").blockingAwait();
+        assertThat(backend.list(prefix + "dataset/").toList().blockingGet()).isEmpty();
+        assertThat(client.readData("dataset", DIMENSIONAL_SCHEMA, "", null).count().blockingGet())
+                .isEqualTo(10);
+    }
+
+    @Test
+    void testPartitionedDataset() throws IOException {
+
+        AtomicLong bytesRead = new AtomicLong();
+        DataClient countingClient = createCountingClient(bytesRead);
+
+        Flowable<GenericRecord> records = generateRecords(9_000).map(record -> {
+            GenericData.Record copy = new GenericData.Record((GenericData.Record) record, true);
+            copy.put("string", "region/" + ((Integer) record.get("int") % 3));
+            copy.put("long", 2017L + (Integer) record.get("int") % 2);
+            return copy;
+        });
+        countingClient.writeAllData("partitioned", DIMENSIONAL_SCHEMA, List.of("long", "string"), records, "")
+                .blockingAwait();
+
+        LocalBackend backend = new LocalBackend(prefix);
+        assertThat(backend.list(prefix + "partitioned/").toList().blockingGet())
+                .hasSize(6)
+                .contains(prefix + "partitioned/long=2017/string=region%2F0/part-00000.parquet");
+
+        List<Object> all = countingClient.readData("partitioned", DIMENSIONAL_SCHEMA, "", null)
+                .map(record -> record.get("int")).toList().blockingGet();
+        assertThat(all).hasSize(9_000);
+        long allBytes = bytesRead.getAndSet(0);
+
+        List<GenericRecord> filtered = countingClient.readData("partitioned", DIMENSIONAL_SCHEMA, "", null,
+                RowFilter.and(RowFilter.eq("string", "region/1"), RowFilter.eq("long", 2018L)))
+                .toList().blockingGet();
+        long filteredBytes = bytesRead.getAndSet(0);
+
+        assertThat(filtered).hasSize(1_500).allSatisfy(record -> {
+            assertThat(record.get("string").toString()).isEqualTo("region/1");
+            assertThat(record.get("long")).isEqualTo(2018L);
+        });
+        assertThat(filteredBytes).isLessThan(allBytes / 4);
+
+        // Filters on other columns still apply within the partitions.
+        List<Object> ints = countingClient.readDataParallel("partitioned", DIMENSIONAL_SCHEMA, "",
+                RowFilter.and(RowFilter.gtEq("long", 2018L), RowFilter.lt("int", 12)), true)
+                .map(record -> record.get("int")).toList().blockingGet();
+        assertThat(ints).containsExactlyInAnyOrder(1, 3, 5, 7, 9, 11);
+    }
+
+    @Test
+    void testPartitionedDatasetLimitsOpenWriters() throws IOException {
+
+        DataClient.Configuration clientConfiguration = new DataClient.Configuration();
+        clientConfiguration.setLocation(prefix);
+        clientConfiguration.setPartitionMaxOpenWriters(2);
+        LocalBackend backend = new LocalBackend(prefix);
+        DataClient partitionedClient = DataClient.builder()
+                .withParquetProvider(new ParquetProvider(new ParquetProvider.Configuration()))
+                .withBinaryBackend(backend)
+                .withConfiguration(clientConfiguration)
+                .build();
+
+        // Not clustered, each record changes the partition.
+        Flowable<GenericRecord> records = generateRecords(300).map(record -> {
+            GenericData.Record copy = new GenericData.Record((GenericData.Record) record, true);
+            copy.put("long", (long) ((Integer) record.get("int") % 3));
+            return copy;
+        });
+        partitionedClient.writeAllData("partitioned", DIMENSIONAL_SCHEMA, List.of("long"), records, "")
+                .blockingAwait();
+
+        List<String> files = backend.list(prefix + "partitioned/").toList().blockingGet();
+        assertThat(files.size()).isGreaterThan(3);
+        assertThat(files).allMatch(file -> file.endsWith(".parquet"));
+        List<Object> ints = client.readData("partitioned", DIMENSIONAL_SCHEMA, "", null)
+                .map(record -> record.get("int")).toList().blockingGet();
+        assertThat(ints).containsExactlyInAnyOrderElementsOf(
+                generateRecords(300).map(record -> record.get("int")).toList().blockingGet());
+    }
+
+    @Test
+    void testPartitionedDatasetCloseFailure() throws IOException {
+
+        LocalBackend backend = new LocalBackend(prefix) {
+            @Override
+            public SeekableByteChannel write(String path) throws IOException {
+                SeekableByteChannel channel = super.write(path);
+                if (!path.contains("long=2017")) {
+                    return channel;
+                }
+                return new SeekableByteChannel() {
+                    @Override
+                    public int read(ByteBuffer dst) throws IOException {
+                        return channel.read(dst);
+                    }
+
+                    @Override
+                    public int write(ByteBuffer src) throws IOException {
+                        return channel.write(src);
+                    }
+
+                    @Override
+                    public long position() throws IOException {
+                        return channel.position();
+                    }
+
+                    @Override
+                    public SeekableByteChannel position(long newPosition) throws IOException {
+                        channel.position(newPosition);
+                        return this;
+                    }
+
+                    @Override
+                    public long size() throws IOException {
+                        return channel.size();
+                    }
+
+                    @Override
+                    public SeekableByteChannel truncate(long size) throws IOException {
+                        channel.truncate(size);
+                        return this;
+                    }
+
+                    @Override
+                    public boolean isOpen() {
+                        return channel.isOpen();
+                    }
+
+                    @Override
+                    public void close() throws IOException {
+                        channel.close();
+                        throw new IOException("could not close " + path);
+                    }
+                };
+            }
+        };
+        DataClient.Configuration clientConfiguration = new DataClient.Configuration();
+        clientConfiguration.setLocation(prefix);
+        DataClient failingClient = DataClient.builder()
+                .withParquetProvider(new ParquetProvider(new ParquetProvider.Configuration()))
+                .withBinaryBackend(backend)
+                .withConfiguration(clientConfiguration)
+                .build();
+
+        Flowable<GenericRecord> records = generateRecords(100).map(record -> {
+            GenericData.Record copy = new GenericData.Record((GenericData.Record) record, true);
+            copy.put("long", 2016L + (Integer) record.get("int") % 3);
+            return copy;
+        });
+        DataClient.PartitionedDataWriter writer = failingClient.writePartitionedData("partitioned",
+                DIMENSIONAL_SCHEMA, List.of("long"), "");
+        for (GenericRecord record : records.toList().blockingGet()) {
+            writer.save(record);
+        }
+        assertThatThrownBy(writer::close).isInstanceOf(IOException.class);
+
+        // The other partitions are closed too and all the temporary files are deleted.
+        assertThat(backend.list(prefix + "partitioned").toList().blockingGet()).isEmpty();
+    }
+
+    private DataClient createCountingClient(AtomicLong bytesRead) {
+        DataClient.Configuration clientConfiguration = new DataClient.Configuration();
+        clientConfiguration.setLocation(prefix);
+        ParquetProvider.Configuration parquetConfiguration = new ParquetProvider.Configuration();
+        parquetConfiguration.setPageSize(8 * 1024);
+        parquetConfiguration.setRowGroupSize(64 * 1024);
+        return DataClient.builder()
+                .withParquetProvider(new ParquetProvider(parquetConfiguration))
+                .withBinaryBackend(new CountingBackend(new LocalBackend(prefix), bytesRead))
+                .withConfiguration(clientConfiguration)
+                .build();
+    }
+
+    private class CountingBackend implements BinaryBackend {
+
+        private final BinaryBackend delegate;
+        private final AtomicLong bytesRead;
+
+        private CountingBackend(BinaryBackend delegate, AtomicLong bytesRead) {
+            this.delegate = delegate;
+            this.bytesRead = bytesRead;
+        }
+
+        @Override
+        public Flowable<String> list(String path) throws IOException {
+            return delegate.list(path);
+        }
+
+        @Override
+        public SeekableByteChannel read(String path) throws IOException {
+            opened.incrementAndGet();
+            SeekableByteChannel channel = delegate.read(path);
+            return new SeekableByteChannel() {
+                @Override
+                public int read(ByteBuffer dst) throws IOException {
+                    int read = channel.read(dst);
+                    if (read > 0) {
+                        bytesRead.addAndGet(read);
+                    }
+                    return read;
+                }
+
+                @Override
+                public int write(ByteBuffer src) throws IOException {
+                    return channel.write(src);
+                }
+
+                @Override
+                public long position() throws IOException {
+                    return channel.position();
+                }
+
+                @Override
+                public SeekableByteChannel position(long newPosition) throws IOException {
+                    channel.position(newPosition);
+                    return this;
+                }
+
+                @Override
+                public long size() throws IOException {
+                    return channel.size();
+                }
+
+                @Override
+                public SeekableByteChannel truncate(long size) throws IOException {
+                    channel.truncate(size);
+                    return this;
+                }
+
+                @Override
+                public boolean isOpen() {
+                    return channel.isOpen();
+                }
+
+                @Override
+                public void close() throws IOException {
+                    channel.close();
+                }
+            };
+        }
+
+        @Override
+        public Flowable<VersionedPath> listVersions(String path) throws IOException {
+            return delegate.listVersions(path);
+        }
+
+        @Override
+        public String version(String path) throws IOException {
+            versionLookups.incrementAndGet();
+            return delegate.version(path);
+        }
+
+        @Override
+        public SeekableByteChannel write(String path) throws IOException {
+            return delegate.write(path);
+        }
+
+        @Override
+        public void move(String from, String to) throws IOException {
+            delegate.move(from, to);
+        }
+
+        @Override
+        public void delete(String path) throws IOException {
+            delegate.delete(path);
+        }
+    }
+
     private Flowable<GenericRecord> generateRecords(int count) {
         GenericRecordBuilder record = recordBuilder
                 .set("string", "foo")
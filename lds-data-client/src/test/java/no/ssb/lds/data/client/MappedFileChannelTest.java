@@ -0,0 +1,111 @@
+package no.ssb.lds.data.client;
+
+import io.reactivex.Flowable;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.avro.generic.GenericRecordBuilder;
+import org.apache.parquet.io.SeekableInputStream;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static no.ssb.lds.data.client.DataClientTest.DIMENSIONAL_SCHEMA;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class MappedFileChannelTest {
+
+    private Path file;
+    private byte[] content;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        content = new byte[1000];
+        for (int i = 0; i < content.length; i++) {
+            content[i] = (byte) i;
+        }
+        file = Files.createTempDirectory("lds-data-client").resolve("file");
+        Files.write(file, content);
+    }
+
+    @Test
+    void testReadAcrossChunks() throws IOException {
+        try (MappedFileChannel channel = MappedFileChannel.open(file, 64)) {
+            assertThat(channel.size()).isEqualTo(1000);
+
+            ByteBuffer buffer = ByteBuffer.allocate(200);
+            channel.position(50);
+            assertThat(channel.read(buffer)).isEqualTo(200);
+            assertThat(channel.position()).isEqualTo(250);
+            assertThat(buffer.array()[0]).isEqualTo(content[50]);
+            assertThat(buffer.array()[199]).isEqualTo(content[249]);
+
+            buffer.clear();
+            channel.position(900);
+            assertThat(channel.read(buffer)).isEqualTo(100);
+            assertThat(channel.read(buffer)).isEqualTo(-1);
+
+            assertThatThrownBy(() -> channel.write(ByteBuffer.allocate(1)))
+                    .isInstanceOf(NonWritableChannelException.class);
+        }
+    }
+
+    @Test
+    void testStream() throws IOException {
+        try (MappedFileChannel channel = MappedFileChannel.open(file, 64)) {
+            SeekableInputStream stream = channel.newStream();
+
+            stream.seek(60);
+            ByteBuffer direct = ByteBuffer.allocateDirect(100);
+            stream.readFully(direct);
+            assertThat(stream.getPos()).isEqualTo(160);
+            direct.flip();
+            assertThat(direct.get(0)).isEqualTo(content[60]);
+            assertThat(direct.get(99)).isEqualTo(content[159]);
+
+            byte[] bytes = new byte[10];
+            stream.readFully(bytes, 5, 5);
+            assertThat(bytes[5]).isEqualTo(content[160]);
+            assertThat(stream.read()).isEqualTo(content[165] & 0xFF);
+
+            stream.seek(990);
+            assertThatThrownBy(() -> stream.readFully(new byte[20])).isInstanceOf(EOFException.class);
+        }
+    }
+
+    @Test
+    void testReadData() throws IOException {
+        String prefix = Files.createTempDirectory("lds-data-client").toString();
+        DataClient.Configuration configuration = new DataClient.Configuration();
+        configuration.setLocation(prefix);
+        ParquetProvider.Configuration parquetConfiguration = new ParquetProvider.Configuration();
+        parquetConfiguration.setPageSize(128);
+        parquetConfiguration.setRowGroupSize(8 * 128);
+        DataClient client = DataClient.builder()
+                .withParquetProvider(new ParquetProvider(parquetConfiguration))
+                .withBinaryBackend(new LocalBackend(prefix, true))
+                .withConfiguration(configuration)
+                .build();
+
+        GenericRecordBuilder builder = new GenericRecordBuilder(DIMENSIONAL_SCHEMA)
+                .set("string", "foo")
+                .set("boolean", true)
+                .set("float", 1.5F)
+                .set("long", 123L)
+                .set("double", 2.5D);
+        Flowable<GenericRecord> records = Flowable.range(1, 10_000).map(i -> builder.set("int", i).build());
+        client.writeAllData("mapped", DIMENSIONAL_SCHEMA, records, "").blockingAwait();
+
+        List<Object> page = client.readData("mapped", DIMENSIONAL_SCHEMA, "", new Cursor<>(3, 5000L))
+                .map(record -> record.get("int")).toList().blockingGet();
+        assertThat(page).containsExactly(5000, 5001, 5002);
+        assertThat(client.readData("mapped", DIMENSIONAL_SCHEMA, "", null).count().blockingGet())
+                .isEqualTo(10_000);
+    }
+}
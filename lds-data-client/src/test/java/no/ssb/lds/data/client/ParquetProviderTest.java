@@ -0,0 +1,96 @@
+package no.ssb.lds.data.client;
+
+import org.apache.avro.Schema;
+import org.apache.avro.SchemaBuilder;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.avro.generic.GenericRecordBuilder;
+import org.apache.parquet.column.Encoding;
+import org.apache.parquet.column.ParquetProperties;
+import org.apache.parquet.filter2.compat.FilterCompat;
+import org.apache.parquet.hadoop.ParquetReader;
+import org.apache.parquet.hadoop.ParquetWriter;
+import org.apache.parquet.hadoop.metadata.ColumnChunkMetaData;
+import org.apache.parquet.hadoop.metadata.CompressionCodecName;
+import org.apache.parquet.hadoop.metadata.ParquetMetadata;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ParquetProviderTest {
+
+    private static final Schema SCHEMA = SchemaBuilder.record("root").fields()
+            .requiredString("string")
+            .requiredLong("long")
+            .endRecord();
+
+    private Path file;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        file = Files.createTempDirectory("lds-data-client").resolve("file.parquet");
+    }
+
+    private ParquetMetadata writeAndReadFooter(ParquetProvider provider) throws IOException {
+        GenericRecordBuilder builder = new GenericRecordBuilder(SCHEMA);
+        try (SeekableByteChannel output = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+             ParquetWriter<GenericRecord> writer = provider.getWriter(output, SCHEMA)) {
+            for (long i = 0; i < 10_000; i++) {
+                writer.write(builder.set("string", "value " + i % 10).set("long", i).build());
+            }
+        }
+        try (SeekableByteChannel input = FileChannel.open(file)) {
+            return provider.getFooter(null, input);
+        }
+    }
+
+    private long countRecords(ParquetProvider provider) throws IOException {
+        long count = 0;
+        try (ParquetReader<GenericRecord> reader = provider.getReader(FileChannel.open(file), SCHEMA,
+                FilterCompat.NOOP)) {
+            while (reader.read() != null) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @Test
+    void testDefaultWriterSettings() throws IOException {
+
+        ParquetProvider provider = new ParquetProvider(new ParquetProvider.Configuration());
+        ParquetMetadata footer = writeAndReadFooter(provider);
+
+        ColumnChunkMetaData string = footer.getBlocks().get(0).getColumns().get(0);
+        assertThat(string.getCodec()).isEqualTo(CompressionCodecName.SNAPPY);
+        assertThat(string.getEncodings()).contains(Encoding.PLAIN_DICTIONARY);
+        assertThat(countRecords(provider)).isEqualTo(10_000);
+    }
+
+    @Test
+    void testWriterSettings() throws IOException {
+
+        ParquetProvider.Configuration configuration = new ParquetProvider.Configuration();
+        configuration.setCompressionCodec(CompressionCodecName.GZIP);
+        configuration.setDictionaryEncoding(false);
+        configuration.setWriterVersion(ParquetProperties.WriterVersion.PARQUET_2_0);
+        configuration.setPageSize(1024);
+        ParquetProvider provider = new ParquetProvider(configuration);
+        ParquetMetadata footer = writeAndReadFooter(provider);
+
+        ColumnChunkMetaData string = footer.getBlocks().get(0).getColumns().get(0);
+        ColumnChunkMetaData longs = footer.getBlocks().get(0).getColumns().get(1);
+        assertThat(string.getCodec()).isEqualTo(CompressionCodecName.GZIP);
+        assertThat(string.getEncodings()).doesNotContain(Encoding.PLAIN_DICTIONARY, Encoding.RLE_DICTIONARY);
+        assertThat(longs.getEncodings()).contains(Encoding.DELTA_BINARY_PACKED);
+        assertThat(countRecords(provider)).isEqualTo(10_000);
+    }
+}
@@ -0,0 +1,48 @@
+package no.ssb.lds.data.client;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RangeTest {
+
+    @Test
+    void testCoalesce() {
+        List<Range> merged = Range.coalesce(List.of(
+                new Range(500, 100),
+                new Range(0, 100),
+                new Range(150, 100),
+                new Range(200, 10),
+                new Range(2000, 10)
+        ), 50);
+        assertThat(merged).containsExactly(new Range(0, 250), new Range(500, 100), new Range(2000, 10));
+    }
+
+    @Test
+    void testReadRanges() throws IOException {
+        Path directory = Files.createTempDirectory("lds-data-client");
+        byte[] content = new byte[10_000];
+        for (int i = 0; i < content.length; i++) {
+            content[i] = (byte) i;
+        }
+        Files.write(directory.resolve("file"), content);
+        LocalBackend backend = new LocalBackend(directory.toString());
+
+        List<ByteBuffer> buffers = backend.readRanges("/file", List.of(new Range(9_000, 1000), new Range(10, 20),
+                new Range(15, 5)));
+
+        assertThat(buffers).hasSize(3);
+        assertThat(buffers.get(0).remaining()).isEqualTo(1000);
+        assertThat(buffers.get(0).get(0)).isEqualTo(content[9_000]);
+        assertThat(buffers.get(1).remaining()).isEqualTo(20);
+        assertThat(buffers.get(1).get(19)).isEqualTo(content[29]);
+        assertThat(buffers.get(2).get(0)).isEqualTo(content[15]);
+        assertThat(buffers.get(2).isReadOnly()).isTrue();
+    }
+}
@@ -0,0 +1,101 @@
+package no.ssb.lds.data.client.converters;
+
+import io.reactivex.Flowable;
+import org.apache.avro.Schema;
+import org.apache.avro.SchemaBuilder;
+import org.apache.avro.file.CodecFactory;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.avro.generic.GenericRecordBuilder;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.List;
+
+import static no.ssb.lds.data.client.DataClientTest.DIMENSIONAL_SCHEMA;
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AvroConverterTest {
+
+    private AvroConverter converter;
+
+    @BeforeEach
+    void setUp() {
+        converter = new AvroConverter();
+    }
+
+    private static List<GenericRecord> generateRecords(int count) {
+        GenericRecordBuilder builder = new GenericRecordBuilder(DIMENSIONAL_SCHEMA)
+                .set("boolean", true)
+                .set("float", 1.5F)
+                .set("long", 123L)
+                .set("double", 2.5D);
+        return Flowable.range(0, count).map(i -> (GenericRecord) builder.set("string", "row " + i).set("int", i)
+                .build()).toList().blockingGet();
+    }
+
+    private byte[] write(AvroConverter converter, List<GenericRecord> records) {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        converter.write(Flowable.fromIterable(records), output, converter.getMediaType(), DIMENSIONAL_SCHEMA)
+                .blockingAwait();
+        return output.toByteArray();
+    }
+
+    @Test
+    void testWriteAndRead() {
+
+        List<GenericRecord> records = generateRecords(1000);
+        byte[] bytes = write(new AvroConverter(CodecFactory.deflateCodec(1), false), records);
+
+        List<GenericRecord> read = converter.read(new ByteArrayInputStream(bytes), converter.getMediaType(),
+                DIMENSIONAL_SCHEMA).toList().blockingGet();
+        assertThat(read).containsExactlyElementsOf(records);
+    }
+
+    @Test
+    void testReuseRecords() {
+
+        byte[] bytes = write(converter, generateRecords(100));
+
+        AvroConverter reusing = new AvroConverter(CodecFactory.nullCodec(), true);
+        List<Object> ints = reusing.read(new ByteArrayInputStream(bytes), converter.getMediaType(),
+                DIMENSIONAL_SCHEMA).map(record -> record.get("int")).toList().blockingGet();
+        assertThat(ints).hasSize(100).startsWith(0, 1, 2).endsWith(99);
+
+        List<GenericRecord> instances = reusing.read(new ByteArrayInputStream(bytes), converter.getMediaType(),
+                DIMENSIONAL_SCHEMA).distinct(System::identityHashCode).toList().blockingGet();
+        assertThat(instances).hasSize(1);
+    }
+
+    @Test
+    void testReadWithReaderSchema() {
+
+        byte[] bytes = write(converter, generateRecords(10));
+
+        Schema projection = SchemaBuilder.record("root").namespace("no.ssb.dataset").fields()
+                .requiredInt("int")
+                .name("added").type().stringType().stringDefault("default")
+                .endRecord();
+        List<GenericRecord> read = converter.read(new ByteArrayInputStream(bytes), converter.getMediaType(),
+                projection).toList().blockingGet();
+
+        assertThat(read).hasSize(10);
+        assertThat(read.get(3).getSchema()).isEqualTo(projection);
+        assertThat(read.get(3).get("int")).isEqualTo(3);
+        assertThat(read.get(3).get("added")).hasToString("default");
+    }
+
+    @Test
+    void testEmpty() {
+        byte[] bytes = write(converter, List.of());
+        assertThat(converter.read(new ByteArrayInputStream(bytes), converter.getMediaType(), DIMENSIONAL_SCHEMA)
+                .toList().blockingGet()).isEmpty();
+    }
+
+    @Test
+    void testSupportsMime() {
+        assertThat(converter.doesSupport(converter.getMediaType())).isTrue();
+        assertThat(converter.doesSupport("application/json")).isFalse();
+    }
+}
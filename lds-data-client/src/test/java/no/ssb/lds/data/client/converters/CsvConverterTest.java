@@ -1,7 +1,10 @@
 package no.ssb.lds.data.client.converters;
 
 import io.reactivex.Flowable;
+import org.apache.avro.Conversions;
+import org.apache.avro.LogicalTypes;
 import org.apache.avro.Schema;
+import org.apache.avro.SchemaBuilder;
 import org.apache.avro.generic.GenericData;
 import org.apache.avro.generic.GenericRecord;
 import org.apache.avro.generic.GenericRecordBuilder;
@@ -12,10 +15,15 @@ import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.time.LocalDate;
 import java.util.List;
 
 import static no.ssb.lds.data.client.DataClientTest.DIMENSIONAL_SCHEMA;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
 class CsvConverterTest {
 
@@ -69,6 +77,84 @@ class CsvConverterTest {
         );
     }
 
+    @Test
+    void testReadNullableAndLogicalTypes() {
+
+        Schema decimal = LogicalTypes.decimal(10, 2).addToSchema(Schema.create(Schema.Type.BYTES));
+        Schema schema = SchemaBuilder.record("root").fields()
+                .optionalString("name")
+                .optionalInt("count")
+                .name("date").type(LogicalTypes.date().addToSchema(Schema.create(Schema.Type.INT))).noDefault()
+                .name("timestamp").type(LogicalTypes.timestampMillis()
+                        .addToSchema(Schema.create(Schema.Type.LONG))).noDefault()
+                .name("amount").type(decimal).noDefault()
+                .name("missing").type().stringType().stringDefault("default")
+                .endRecord();
+
+        InputStream csvStream = new ByteArrayInputStream((
+                "amount,timestamp,date,count,name\r\n" +
+                        "12.5,2019-03-01T12:00:00Z,2019-03-01,,foo\r\n" +
+                        "-1,2019-03-01T12:00:00.123,1970-01-02,3,"
+        ).getBytes());
+
+        List<GenericRecord> records = converter.read(csvStream, converter.getMediaType(), schema).toList()
+                .blockingGet();
+
+        assertThat(records).hasSize(2);
+        GenericRecord first = records.get(0);
+        assertThat(first.get("name")).isEqualTo("foo");
+        assertThat(first.get("count")).isNull();
+        assertThat(first.get("date")).isEqualTo((int) LocalDate.of(2019, 3, 1).toEpochDay());
+        assertThat(first.get("timestamp")).isEqualTo(Instant.parse("2019-03-01T12:00:00Z").toEpochMilli());
+        assertThat(new Conversions.DecimalConversion().fromBytes((ByteBuffer) first.get("amount"), decimal,
+                decimal.getLogicalType())).isEqualTo(new BigDecimal("12.50"));
+        assertThat(first.get("missing")).hasToString("default");
+
+        GenericRecord second = records.get(1);
+        assertThat(second.get("name")).isNull();
+        assertThat(second.get("count")).isEqualTo(3);
+        assertThat(second.get("date")).isEqualTo(1);
+        assertThat(second.get("timestamp")).isEqualTo(Instant.parse("2019-03-01T12:00:00.123Z").toEpochMilli());
+    }
+
+    @Test
+    void testReadMissingColumn() {
+
+        InputStream csvStream = new ByteArrayInputStream("string,int\r\nfoo,123".getBytes());
+
+        assertThatThrownBy(() -> converter.read(csvStream, converter.getMediaType(), DIMENSIONAL_SCHEMA)
+                .blockingSubscribe()).hasMessageContaining("boolean");
+    }
+
+    @Test
+    void testReadParallel() {
+
+        StringBuilder csv = new StringBuilder("string,int,boolean,float,long,double\r\n");
+        for (int i = 0; i < 1000; i++) {
+            String string = i % 3 == 0 ? "\"multi\r\nline, \"\"quoted\"\"\r\n" + i + "\"" : "plain" + i;
+            csv.append(string).append(',').append(i).append(",true,1.5,").append(i * 10L).append(",2.5");
+            if (i < 999) {
+                csv.append("\r\n");
+            }
+        }
+        byte[] bytes = csv.toString().getBytes();
+
+        List<GenericRecord> expected = converter.read(new ByteArrayInputStream(bytes), converter.getMediaType(),
+                DIMENSIONAL_SCHEMA).toList().blockingGet();
+        assertThat(expected).hasSize(1000);
+        assertThat(expected.get(0).get("string")).isEqualTo("multi\r\nline, \"quoted\"\r\n0");
+
+        for (int blockSize : List.of(1, 17, 256, 1024 * 1024)) {
+            CsvConverter parallelConverter = new CsvConverter(4, blockSize);
+            List<GenericRecord> records = parallelConverter.read(new ByteArrayInputStream(bytes),
+                    converter.getMediaType(), DIMENSIONAL_SCHEMA).toList().blockingGet();
+            assertThat(records).containsExactlyElementsOf(expected);
+        }
+
+        assertThat(new CsvConverter(4, 16).read(InputStream.nullInputStream(), converter.getMediaType(),
+                DIMENSIONAL_SCHEMA).toList().blockingGet()).isEmpty();
+    }
+
     @Test
     void testWrite() {
 
@@ -2,9 +2,12 @@ package no.ssb.lds.data.client.converters;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import io.reactivex.Flowable;
+import org.apache.avro.Schema;
+import org.apache.avro.SchemaBuilder;
 import org.apache.avro.generic.GenericData;
 import org.apache.avro.generic.GenericRecord;
 import org.apache.avro.generic.GenericRecordBuilder;
+import org.apache.avro.util.Utf8;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
@@ -12,10 +15,14 @@ import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.util.List;
+import java.util.Map;
 
 import static no.ssb.lds.data.client.DataClientTest.DIMENSIONAL_SCHEMA;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.entry;
 
 class JsonConverterTest {
 
@@ -69,6 +76,60 @@ class JsonConverterTest {
         );
     }
 
+    @Test
+    @SuppressWarnings("unchecked")
+    void testReadNested() {
+
+        Schema address = SchemaBuilder.record("address").fields()
+                .requiredString("street")
+                .optionalInt("number")
+                .endRecord();
+        Schema schema = SchemaBuilder.record("person").fields()
+                .requiredString("name")
+                .name("address").type().optional().type(address)
+                .name("tags").type().array().items().stringType().noDefault()
+                .name("scores").type().map().values().doubleType().noDefault()
+                .name("count").type().longType().longDefault(42)
+                .endRecord();
+
+        InputStream jsonStream = new ByteArrayInputStream((
+                "[{\"name\": \"foo\", \"unknown\": {\"a\": [1, 2]}, " +
+                        "\"address\": {\"street\": \"main\", \"number\": 1}, " +
+                        "\"tags\": [\"a\", \"b\"], \"scores\": {\"x\": 1, \"y\": 2.5}}," +
+                        "{\"name\": \"bar\", \"address\": null, \"tags\": [], \"scores\": {}, \"count\": 1}]"
+        ).getBytes());
+
+        List<GenericRecord> records = converter.read(jsonStream, converter.getMediaType(), schema).toList()
+                .blockingGet();
+
+        assertThat(records).hasSize(2);
+        GenericRecord first = records.get(0);
+        assertThat(first.get("name")).isEqualTo("foo");
+        assertThat(first.get("address")).isEqualTo(new GenericRecordBuilder(address)
+                .set("street", "main").set("number", 1).build());
+        assertThat((List<Object>) first.get("tags")).containsExactly("a", "b");
+        assertThat((Map<Object, Object>) first.get("scores")).containsExactly(entry("x", 1.0D), entry("y", 2.5D));
+        assertThat(first.get("count")).isEqualTo(42L);
+
+        GenericRecord second = records.get(1);
+        assertThat(second.get("address")).isNull();
+        assertThat((List<Object>) second.get("tags")).isEmpty();
+        assertThat(second.get("count")).isEqualTo(1L);
+    }
+
+    @Test
+    void testReadInvalid() {
+
+        InputStream missing = new ByteArrayInputStream("[{\"string\": \"foo\"}]".getBytes());
+        assertThatThrownBy(() -> converter.read(missing, converter.getMediaType(), DIMENSIONAL_SCHEMA)
+                .blockingSubscribe()).hasMessageContaining("missing field int");
+
+        InputStream wrongType = new ByteArrayInputStream(("[{\"string\": \"foo\", \"int\": true, " +
+                "\"boolean\": true, \"float\": 1, \"long\": 1, \"double\": 1}]").getBytes());
+        assertThatThrownBy(() -> converter.read(wrongType, converter.getMediaType(), DIMENSIONAL_SCHEMA)
+                .blockingSubscribe()).hasMessageContaining("VALUE_TRUE");
+    }
+
     @Test
     void testWrite() {
 
@@ -90,9 +151,68 @@ class JsonConverterTest {
         ).blockingAwait();
 
         assertThat(new String(output.toByteArray())).isEqualTo(
-                "[{\"string\": \"foo\", \"int\": 123, \"boolean\": true, \"float\": 123.123, " +
-                        "\"long\": 123, \"double\": 123.123}]"
+                "[{\"string\":\"foo\",\"int\":123,\"boolean\":true,\"float\":123.123," +
+                        "\"long\":123,\"double\":123.123}]"
+        );
+    }
+
+    @Test
+    void testWriteLines() {
+
+        GenericRecordBuilder builder = new GenericRecordBuilder(DIMENSIONAL_SCHEMA)
+                .set("string", new Utf8("f\"oo"))
+                .set("boolean", true)
+                .set("float", Float.NaN)
+                .set("long", 123L)
+                .set("double", Double.POSITIVE_INFINITY);
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+        JsonConverter lines = new JsonConverter(new ObjectMapper(), JsonConverter.Framing.LINES);
+        lines.write(
+                Flowable.just(builder.set("int", 1).build(), builder.set("int", 2).build()),
+                output,
+                converter.getMediaType(), DIMENSIONAL_SCHEMA
+        ).blockingAwait();
+
+        assertThat(new String(output.toByteArray())).isEqualTo(
+                "{\"string\":\"f\\\"oo\",\"int\":1,\"boolean\":true,\"float\":\"NaN\"," +
+                        "\"long\":123,\"double\":\"Infinity\"}\n" +
+                        "{\"string\":\"f\\\"oo\",\"int\":2,\"boolean\":true,\"float\":\"NaN\"," +
+                        "\"long\":123,\"double\":\"Infinity\"}\n"
         );
+
+        // Read back with the same framing.
+        List<GenericRecord> records = lines.read(new ByteArrayInputStream(output.toByteArray()),
+                converter.getMediaType(), DIMENSIONAL_SCHEMA).toList().blockingGet();
+        assertThat(records).extracting(record -> record.get("int")).containsExactly(1, 2);
+        assertThat(records).extracting(record -> record.get("string").toString()).containsOnly("f\"oo");
+        assertThat(records).extracting(record -> record.get("double")).containsOnly(Double.POSITIVE_INFINITY);
+    }
+
+    @Test
+    void testWriteAndReadNested() {
+
+        Schema schema = SchemaBuilder.record("root").fields()
+                .name("bytes").type().bytesType().noDefault()
+                .name("optional").type().optional().array().items().map().values().longType()
+                .endRecord();
+        GenericData.Record record = new GenericRecordBuilder(schema)
+                .set("bytes", ByteBuffer.wrap(new byte[]{0, 1, 2, (byte) 255}))
+                .set("optional", List.of(Map.of("a", 1L), Map.of()))
+                .build();
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        converter.write(Flowable.just(record), output, converter.getMediaType(), schema).blockingAwait();
+
+        assertThat(new String(output.toByteArray()))
+                .isEqualTo("[{\"bytes\":\"AAEC/w==\",\"optional\":[{\"a\":1},{}]}]");
+
+        List<GenericRecord> records = converter.read(new ByteArrayInputStream(output.toByteArray()),
+                converter.getMediaType(), schema).toList().blockingGet();
+        assertThat(records).hasSize(1);
+        assertThat(records.get(0).get("bytes")).isEqualTo(record.get("bytes"));
+        assertThat(records.get(0).get("optional").toString()).isEqualTo("[{a=1}, {}]");
     }
 
     @Test
@@ -0,0 +1,96 @@
+package no.ssb.lds.data.client.converters;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.reactivex.Flowable;
+import io.reactivex.schedulers.Schedulers;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.avro.generic.GenericRecordBuilder;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+
+import static no.ssb.lds.data.client.DataClientTest.DIMENSIONAL_SCHEMA;
+import static org.assertj.core.api.Assertions.assertThat;
+
+class NdjsonConverterTest {
+
+    private NdjsonConverter converter;
+
+    @BeforeEach
+    void setUp() {
+        converter = new NdjsonConverter(new ObjectMapper(), 4, 64, 7, Schedulers.computation());
+    }
+
+    private static Flowable<GenericRecord> generateRecords(int count) {
+        GenericRecordBuilder builder = new GenericRecordBuilder(DIMENSIONAL_SCHEMA)
+                .set("boolean", true)
+                .set("float", 1.5F)
+                .set("long", 123L)
+                .set("double", 2.5D);
+        return Flowable.range(0, count).map(i -> builder.set("string", "line " + i).set("int", i).build());
+    }
+
+    @Test
+    void testEmpty() {
+
+        List<GenericRecord> records = converter.read(
+                InputStream.nullInputStream(),
+                converter.getMediaType(),
+                DIMENSIONAL_SCHEMA
+        ).toList().blockingGet();
+
+        assertThat(records).isEmpty();
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        converter.write(Flowable.empty(), output, converter.getMediaType(), DIMENSIONAL_SCHEMA).blockingAwait();
+        assertThat(output.toByteArray()).isEmpty();
+    }
+
+    @Test
+    void testRead() {
+
+        InputStream jsonStream = new ByteArrayInputStream((
+                "{\"string\": \"foo\", \"int\": 1, \"boolean\": true, \"float\": 1.5, \"long\": 123, " +
+                        "\"double\": 2.5}\n" +
+                        "\n" +
+                        "{\"string\": \"bar\", \"int\": 2, \"boolean\": true, \"float\": 1.5, \"long\": 123, " +
+                        "\"double\": 2.5}"
+        ).getBytes());
+
+        List<Object> strings = converter.read(jsonStream, converter.getMediaType(), DIMENSIONAL_SCHEMA)
+                .map(record -> record.get("string")).toList().blockingGet();
+
+        assertThat(strings).containsExactly("foo", "bar");
+    }
+
+    @Test
+    void testWriteAndRead() {
+
+        List<GenericRecord> records = generateRecords(1000).toList().blockingGet();
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        converter.write(Flowable.fromIterable(records), output, converter.getMediaType(), DIMENSIONAL_SCHEMA)
+                .blockingAwait();
+
+        String[] lines = new String(output.toByteArray()).split("\n");
+        assertThat(lines).hasSize(1000);
+        assertThat(lines[0]).isEqualTo("{\"string\":\"line 0\",\"int\":0,\"boolean\":true,\"float\":1.5," +
+                "\"long\":123,\"double\":2.5}");
+
+        List<GenericRecord> read = converter.read(new ByteArrayInputStream(output.toByteArray()),
+                converter.getMediaType(), DIMENSIONAL_SCHEMA).toList().blockingGet();
+        assertThat(read).containsExactlyElementsOf(records);
+    }
+
+    @Test
+    void testSupportsMime() {
+        assertThat(converter.doesSupport(converter.getMediaType())).isTrue();
+        assertThat(converter.doesSupport(converter.getMediaType() + ";charset=utf-8")).isTrue();
+        assertThat(converter.doesSupport("application/json")).isFalse();
+    }
+}
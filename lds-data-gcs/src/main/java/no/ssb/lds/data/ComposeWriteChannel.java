@@ -0,0 +1,320 @@
+package no.ssb.lds.data;
+
+import com.google.cloud.storage.BlobId;
+import com.google.cloud.storage.BlobInfo;
+import com.google.cloud.storage.Storage;
+import com.google.cloud.storage.StorageException;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.NonReadableChannelException;
+import java.nio.channels.SeekableByteChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Write only {@link SeekableByteChannel} that uploads parts concurrently and composes them on close.
+ * <p>
+ * The bytes are buffered in parts of partSize bytes. Each full part is uploaded as a separate object on the
+ * executor while the next part is filled. At most maxParts parts are kept in memory; writes block when all of
+ * them are uploading. Failed parts are retried individually, with exponential backoff, when the error is
+ * retryable (ie. 429 and 5xx). On close, the parts are combined into the target
+ * object with GCS compose (in several rounds if there are more than 32 parts) and deleted.
+ * <p>
+ * The parts are written under a temporary prefix (by default {@value #DEFAULT_TEMPORARY_PREFIX}) so that they are
+ * never listed with the data. They are deleted when the upload fails, but a crashed process leaves them behind;
+ * use a lifecycle rule on the prefix to remove them.
+ */
+public class ComposeWriteChannel implements SeekableByteChannel {
+
+    // Maximum number of sources of one compose request.
+    static final int MAX_COMPOSE_SOURCES = 32;
+
+    public static final String DEFAULT_TEMPORARY_PREFIX = "_compose/";
+
+    private static final long INITIAL_BACKOFF_MILLIS = 100;
+    private static final long MAX_BACKOFF_MILLIS = 10_000;
+
+    private final Storage storage;
+    private final BlobId target;
+    private final ExecutorService executor;
+    private final int partSize;
+    private final int retries;
+    private final Semaphore inFlight;
+    private final String temporaryPrefix;
+    private final List<String> parts = new ArrayList<>();
+    private final List<Future<?>> uploads = new ArrayList<>();
+    private ByteBuffer current;
+    private long pos = 0;
+    private boolean open = true;
+    private volatile boolean aborted = false;
+
+    /**
+     * Create a new channel.
+     *
+     * @param storage  the storage service.
+     * @param target   the object to create.
+     * @param executor the executor the parts are uploaded on.
+     * @param partSize the size of the parts in bytes.
+     * @param maxParts the maximum number of parts in memory, and thus the number of concurrent uploads.
+     * @param retries  the number of times a failed part is retried.
+     */
+    public ComposeWriteChannel(Storage storage, BlobId target, ExecutorService executor, int partSize,
+                               int maxParts, int retries) {
+        this(storage, target, executor, partSize, maxParts, retries, DEFAULT_TEMPORARY_PREFIX);
+    }
+
+    /**
+     * Create a new channel.
+     *
+     * @param temporaryPrefix the prefix, in the bucket of the target, of the parts and intermediate objects.
+     * @see #ComposeWriteChannel(Storage, BlobId, ExecutorService, int, int, int)
+     */
+    public ComposeWriteChannel(Storage storage, BlobId target, ExecutorService executor, int partSize,
+                               int maxParts, int retries, String temporaryPrefix) {
+        this.storage = storage;
+        this.target = target;
+        this.executor = executor;
+        this.partSize = partSize;
+        this.retries = retries;
+        this.inFlight = new Semaphore(Math.max(maxParts, 1));
+        this.temporaryPrefix = temporaryPrefix + UUID.randomUUID() + "/";
+    }
+
+    private static IOException unwrap(ExecutionException ee) {
+        Throwable cause = ee.getCause();
+        if (cause instanceof IOException) {
+            return (IOException) cause;
+        }
+        return new IOException(cause);
+    }
+
+    @Override
+    public int read(ByteBuffer dst) {
+        throw new NonReadableChannelException();
+    }
+
+    @Override
+    public int write(ByteBuffer src) throws IOException {
+        if (!open) {
+            throw new ClosedChannelException();
+        }
+        int written = 0;
+        while (src.hasRemaining()) {
+            if (current == null) {
+                try {
+                    acquire();
+                } catch (IOException ioe) {
+                    open = false;
+                    abort(List.of());
+                    throw ioe;
+                }
+                current = ByteBuffer.allocate(partSize);
+            }
+            int length = Math.min(src.remaining(), current.remaining());
+            ByteBuffer slice = src.duplicate();
+            slice.limit(slice.position() + length);
+            current.put(slice);
+            src.position(src.position() + length);
+            written += length;
+            if (!current.hasRemaining()) {
+                flushPart();
+            }
+        }
+        pos += written;
+        return written;
+    }
+
+    private void acquire() throws IOException {
+        try {
+            inFlight.acquire();
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while waiting for a part upload");
+        }
+        // Fail fast if a previous part could not be uploaded.
+        for (Future<?> upload : uploads) {
+            if (upload.isDone()) {
+                await(upload);
+            }
+        }
+    }
+
+    private void flushPart() {
+        ByteBuffer part = current;
+        current = null;
+        part.flip();
+        String name = String.format("%spart-%06d", temporaryPrefix, parts.size());
+        parts.add(name);
+        uploads.add(executor.submit(() -> {
+            try {
+                upload(name, part);
+                return null;
+            } finally {
+                inFlight.release();
+            }
+        }));
+    }
+
+    private void upload(String name, ByteBuffer part) throws IOException {
+        // Uploaded from the heap buffer of the part, without copy.
+        BlobInfo info = BlobInfo.newBuilder(BlobId.of(target.getBucket(), name)).build();
+        long backoff = INITIAL_BACKOFF_MILLIS;
+        for (int attempt = 0; ; attempt++) {
+            if (aborted) {
+                throw new IOException("upload of " + target + " aborted");
+            }
+            try {
+                storage.create(info, part.array(), part.arrayOffset() + part.position(), part.remaining());
+                return;
+            } catch (StorageException se) {
+                if (attempt >= retries || !se.isRetryable()) {
+                    throw new IOException("could not upload part " + name, se);
+                }
+            }
+            try {
+                // Exponential backoff with jitter, so that throttled uploads do not retry all at once.
+                Thread.sleep(backoff / 2 + ThreadLocalRandom.current().nextLong(backoff));
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("interrupted while retrying part " + name);
+            }
+            backoff = Math.min(backoff * 2, MAX_BACKOFF_MILLIS);
+        }
+    }
+
+    private void await(Future<?> upload) throws IOException {
+        try {
+            upload.get();
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while waiting for a part upload");
+        } catch (ExecutionException ee) {
+            throw unwrap(ee);
+        }
+    }
+
+    /**
+     * Compose the sources into the target, using intermediate objects if there are too many sources.
+     */
+    private void compose(List<String> sources, List<String> created) {
+        int round = 0;
+        while (sources.size() > MAX_COMPOSE_SOURCES) {
+            List<String> next = new ArrayList<>();
+            for (int i = 0; i < sources.size(); i += MAX_COMPOSE_SOURCES) {
+                String name = String.format("%scompose-%d-%06d", temporaryPrefix, round, next.size());
+                storage.compose(Storage.ComposeRequest.newBuilder()
+                        .addSource(sources.subList(i, Math.min(i + MAX_COMPOSE_SOURCES, sources.size())))
+                        .setTarget(BlobInfo.newBuilder(BlobId.of(target.getBucket(), name)).build())
+                        .build());
+                created.add(name);
+                next.add(name);
+            }
+            sources = next;
+            round++;
+        }
+        storage.compose(Storage.ComposeRequest.newBuilder()
+                .addSource(sources)
+                .setTarget(BlobInfo.newBuilder(target).build())
+                .build());
+    }
+
+    @Override
+    public long position() {
+        return pos;
+    }
+
+    @Override
+    public SeekableByteChannel position(long newPosition) {
+        throw new UnsupportedOperationException("not seekable");
+    }
+
+    @Override
+    public long size() {
+        return position();
+    }
+
+    @Override
+    public SeekableByteChannel truncate(long size) {
+        throw new UnsupportedOperationException("truncate not supported");
+    }
+
+    @Override
+    public boolean isOpen() {
+        return open;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!open) {
+            return;
+        }
+        open = false;
+        List<String> intermediates = new ArrayList<>();
+        try {
+            if (parts.isEmpty()) {
+                // Small enough to fit in one part, no need to compose.
+                if (current == null) {
+                    storage.create(BlobInfo.newBuilder(target).build(), new byte[0]);
+                } else {
+                    storage.create(BlobInfo.newBuilder(target).build(), current.array(), 0, current.position());
+                }
+                return;
+            }
+            if (current != null && current.position() > 0) {
+                flushPart();
+            }
+            for (Future<?> upload : uploads) {
+                await(upload);
+            }
+            compose(parts, intermediates);
+        } catch (StorageException se) {
+            throw new IOException("could not write " + target, se);
+        } finally {
+            abort(intermediates);
+        }
+    }
+
+    /**
+     * Stops the uploads and deletes the parts and the given intermediate objects, best effort.
+     */
+    private void abort(List<String> intermediates) {
+        aborted = true;
+        // Wait for the running uploads so that their parts are deleted.
+        for (Future<?> upload : uploads) {
+            try {
+                upload.get();
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (ExecutionException | CancellationException e) {
+                // Already reported or not uploaded.
+            }
+        }
+        List<BlobId> temporary = new ArrayList<>();
+        for (String name : parts) {
+            temporary.add(BlobId.of(target.getBucket(), name));
+        }
+        for (String name : intermediates) {
+            temporary.add(BlobId.of(target.getBucket(), name));
+        }
+        if (temporary.isEmpty()) {
+            return;
+        }
+        try {
+            // Batched by the client.
+            storage.delete(temporary);
+        } catch (StorageException se) {
+            // Best effort.
+        }
+    }
+}
@@ -4,30 +4,93 @@ import com.google.api.gax.paging.Page;
 import com.google.cloud.ReadChannel;
 import com.google.cloud.WriteChannel;
 import com.google.cloud.storage.*;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import io.reactivex.Flowable;
 import no.ssb.lds.data.client.BinaryBackend;
+import no.ssb.lds.data.client.Range;
+import no.ssb.lds.data.client.VersionedPath;
 
+import java.io.EOFException;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.nio.ByteBuffer;
 import java.nio.channels.SeekableByteChannel;
+import java.util.ArrayList;
 import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 /**
  * A simple BinaryBackend for Google Cloud Storage.
  */
 public class GoogleCloudStorageBackend implements BinaryBackend {
 
+    private static final int MAX_RANGE_REQUEST_SIZE = 64 * 1024 * 1024;
+    private static final String VERSION_SEPARATOR = ":";
+    static final int DEFAULT_REVERSE_ORDER_LIMIT = 10_000;
+
     private final Storage storage;
     private final Integer writeChunkSize;
     private final Integer readChunkSize;
+    private final Long readCacheSize;
+    private final boolean directBuffers;
+    private final int readAheadChunks;
+    private final Integer writePartSize;
+    private final int writeParallelism;
+    private final int writeRetries;
+    private final String writeTemporaryPrefix;
+    private final long readRangeMaxGap;
+    private final int readRangeParallelism;
+    private final Integer listPageSize;
+    private final boolean listPrefetch;
+    private final boolean listReverseOrder;
+    private final int listReverseOrderLimit;
+    // Used for read-ahead, range reads, part uploads and list prefetch. The threads are bounded by the parallelism
+    // settings; the tasks of concurrent channels and calls wait in the queue.
+    private final ExecutorService executor;
 
     public GoogleCloudStorageBackend(Configuration configuration) {
         this.storage = StorageOptions.getDefaultInstance().getService();
         this.writeChunkSize = configuration.getWriteChunkSize();
         this.readChunkSize = configuration.getReadChunkSize();
+        this.readCacheSize = configuration.getReadCacheSize() != null
+                ? configuration.getReadCacheSize()
+                : (long) readChunkSize * SeekableReadChannel.DEFAULT_CACHED_CHUNKS;
+        this.directBuffers = Boolean.TRUE.equals(configuration.getDirectBuffers());
+        this.readAheadChunks = configuration.getReadAheadChunks() != null ? configuration.getReadAheadChunks() : 0;
+        this.writePartSize = configuration.getWritePartSize();
+        this.writeParallelism = configuration.getWriteParallelism() != null ? configuration.getWriteParallelism() : 4;
+        this.writeRetries = configuration.getWriteRetries() != null ? configuration.getWriteRetries() : 3;
+        this.writeTemporaryPrefix = configuration.getWriteTemporaryPrefix() != null
+                ? configuration.getWriteTemporaryPrefix()
+                : ComposeWriteChannel.DEFAULT_TEMPORARY_PREFIX;
+        this.readRangeMaxGap = configuration.getReadRangeMaxGap() != null
+                ? configuration.getReadRangeMaxGap()
+                : DEFAULT_MAX_GAP;
+        this.readRangeParallelism = configuration.getReadRangeParallelism() != null
+                ? Math.max(configuration.getReadRangeParallelism(), 1)
+                : 8;
+        this.listPageSize = configuration.getListPageSize();
+        this.listPrefetch = !Boolean.FALSE.equals(configuration.getListPrefetch());
+        this.listReverseOrder = Boolean.TRUE.equals(configuration.getListReverseOrder());
+        this.listReverseOrderLimit = configuration.getListReverseOrderLimit() != null
+                ? configuration.getListReverseOrderLimit()
+                : DEFAULT_REVERSE_ORDER_LIMIT;
+        int threads = Math.max(writeParallelism, 1) + readRangeParallelism + readAheadChunks + (listPrefetch ? 1 : 0);
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(),
+                new ThreadFactoryBuilder().setDaemon(true).setNameFormat("gcs-backend-%d").build());
+        pool.allowCoreThreadTimeOut(true);
+        this.executor = pool;
     }
 
     private static String fuse(String start, String end) {
@@ -39,25 +102,260 @@ public class GoogleCloudStorageBackend implements BinaryBackend {
         return start + end;
     }
 
+    /**
+     * Returns the objects whose path starts with the given path.
+     * <p>
+     * The paths are emitted in name order as the pages arrive. When {@link Configuration#getListReverseOrder()}
+     * is true the listing is instead buffered and emitted in reverse name order; it then fails if it has more than
+     * {@link Configuration#getListReverseOrderLimit()} paths.
+     */
     @Override
     public Flowable<String> list(String path) throws IOException {
+        Flowable<String> paths = list(path, false, null);
+        return listReverseOrder ? reverseOrder(paths, listReverseOrderLimit) : paths;
+    }
+
+    /**
+     * Returns the objects whose path starts with the given path in name order, with the generation and size
+     * from the listing as version, so that no metadata request is needed per object.
+     */
+    @Override
+    public Flowable<VersionedPath> listVersions(String path) throws IOException {
+        return listPages(path, false, null).concatMapIterable(ListPage::getVersionedPaths);
+    }
+
+    /**
+     * Returns the objects whose path starts with the given path, in name order.
+     *
+     * @param path        the prefix of the objects.
+     * @param directories whether to stop at the next "/" after the prefix. The "directories" are then returned as
+     *                    paths ending with "/".
+     * @param pageToken   the {@link ListPage#getNextPageToken()} of a previous listing to resume from, or null.
+     */
+    public Flowable<String> list(String path, boolean directories, String pageToken) throws IOException {
+        return listPages(path, directories, pageToken).concatMapIterable(ListPage::getPaths);
+    }
+
+    /**
+     * Returns the pages of the listing of the objects whose path starts with the given path.
+     * <p>
+     * The next page is fetched in the background while the current one is consumed, unless
+     * {@link Configuration#getListPrefetch()} is false.
+     *
+     * @see #list(String, boolean, String)
+     */
+    public Flowable<ListPage> listPages(String path, boolean directories, String pageToken) throws IOException {
         BlobId id = getBlobId(path);
-        return Flowable.defer(() -> {
-            Page<Blob> pages = storage.list(id.getBucket(), Storage.BlobListOption.prefix(id.getName()));
-            return Flowable.fromIterable(pages.iterateAll());
-        }).map(blob -> String.format("gs://%s/%s",blob.getBucket(), blob.getName())).sorted(Comparator.reverseOrder());
+        return pages(token -> fetchPage(id, directories, token), pageToken, listPrefetch ? executor : null);
+    }
+
+    private ListPage fetchPage(BlobId id, boolean directories, String pageToken) {
+        List<Storage.BlobListOption> options = new ArrayList<>();
+        options.add(Storage.BlobListOption.prefix(id.getName()));
+        // The generation and size make the version, see listVersions.
+        options.add(Storage.BlobListOption.fields(Storage.BlobField.NAME, Storage.BlobField.GENERATION,
+                Storage.BlobField.SIZE));
+        if (listPageSize != null) {
+            options.add(Storage.BlobListOption.pageSize(listPageSize));
+        }
+        if (directories) {
+            options.add(Storage.BlobListOption.currentDirectory());
+        }
+        if (pageToken != null) {
+            options.add(Storage.BlobListOption.pageToken(pageToken));
+        }
+        Page<Blob> page = storage.list(id.getBucket(), options.toArray(new Storage.BlobListOption[0]));
+        List<String> paths = new ArrayList<>();
+        List<String> versions = new ArrayList<>();
+        for (Blob blob : page.getValues()) {
+            paths.add(String.format("gs://%s/%s", id.getBucket(), blob.getName()));
+            // Directories (prefixes) have no generation.
+            versions.add(blob.getGeneration() == null ? null : blob.getGeneration() + VERSION_SEPARATOR
+                    + blob.getSize());
+        }
+        return new ListPage(paths, versions, page.hasNextPage() ? page.getNextPageToken() : null);
+    }
+
+    /**
+     * Emits the pages returned by the fetcher, starting at the given token, fetching the next page on the executor
+     * while the current one is consumed. Pages are fetched on demand if the executor is null.
+     */
+    static Flowable<ListPage> pages(PageFetcher fetcher, String pageToken, ExecutorService executor) {
+        return Flowable.<ListPage, PageState>generate(() -> new PageState(pageToken), (state, emitter) -> {
+            if (state.done) {
+                emitter.onComplete();
+                return;
+            }
+            ListPage page = state.next != null ? getPage(state.next) : fetcher.fetch(state.token);
+            state.next = null;
+            state.token = page.getNextPageToken();
+            if (state.token == null) {
+                state.done = true;
+            } else if (executor != null) {
+                String token = state.token;
+                state.next = executor.submit(() -> fetcher.fetch(token));
+            }
+            emitter.onNext(page);
+        }, state -> {
+            if (state.next != null) {
+                state.next.cancel(true);
+            }
+        });
+    }
+
+    private static ListPage getPage(Future<ListPage> page) throws IOException, InterruptedException {
+        try {
+            return page.get();
+        } catch (ExecutionException ee) {
+            if (ee.getCause() instanceof IOException) {
+                throw (IOException) ee.getCause();
+            }
+            if (ee.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) ee.getCause();
+            }
+            throw new IOException("could not list the next page", ee.getCause());
+        }
+    }
+
+    /**
+     * Emits the paths in reverse name order, failing instead of buffering more than limit paths.
+     */
+    static Flowable<String> reverseOrder(Flowable<String> paths, int limit) {
+        return paths.take(limit + 1L).toList().flatMapPublisher(list -> {
+            if (list.size() > limit) {
+                return Flowable.error(new IOException("cannot sort a listing of more than " + limit
+                        + " paths in reverse order, raise listReverseOrderLimit or list in name order"));
+            }
+            list.sort(Comparator.reverseOrder());
+            return Flowable.fromIterable(list);
+        });
     }
 
     @Override
     public SeekableByteChannel read(String path) throws IOException {
         Blob blob = storage.get(getBlobId(path));
-        ReadChannel reader = blob.reader();
+        if (blob == null) {
+            throw new FileNotFoundException(path);
+        }
+        return read(blob.getBlobId(), blob.getSize());
+    }
+
+    /**
+     * Opens the generation of the object identified by the version, without fetching its metadata.
+     */
+    @Override
+    public SeekableByteChannel read(String path, String version) throws IOException {
+        int separator = version == null ? -1 : version.indexOf(VERSION_SEPARATOR);
+        if (separator < 0) {
+            return read(path);
+        }
+        long size = Long.parseLong(version.substring(separator + 1));
+        return read(getBlobId(path, version), size);
+    }
+
+    private SeekableByteChannel read(BlobId id, long size) {
+        // The id contains the generation, later changes of the object are not read.
+        ReadChannel reader = storage.reader(id);
         reader.setChunkSize(readChunkSize);
-        return new SeekableReadChannel(reader, readChunkSize, blob.getSize());
+        return new SeekableReadChannel(reader, readChunkSize, size, readCacheSize, directBuffers,
+                () -> storage.reader(id), executor, readAheadChunks);
+    }
+
+    /**
+     * Reads the merged ranges concurrently, with one request each and at most
+     * {@link Configuration#getReadRangeParallelism()} requests at a time.
+     */
+    @Override
+    public List<ByteBuffer> readRanges(String path, List<Range> ranges) throws IOException {
+        return readRanges(path, null, ranges);
+    }
+
+    /**
+     * Reads the merged ranges of the generation identified by the version, see
+     * {@link #readRanges(String, List)}.
+     */
+    @Override
+    public List<ByteBuffer> readRanges(String path, String version, List<Range> ranges) throws IOException {
+        BlobId id = getBlobId(path, version);
+        List<Range> merged = Range.coalesce(ranges, readRangeMaxGap);
+        List<ByteBuffer> buffers = readAll(merged, range -> readRange(id, range), executor, readRangeParallelism);
+        return Range.slice(ranges, merged, buffers);
+    }
+
+    /**
+     * Reads the ranges on the executor, keeping at most parallelism reads running.
+     */
+    static List<ByteBuffer> readAll(List<Range> ranges, RangeFetcher fetcher, ExecutorService executor,
+                                    int parallelism) throws IOException {
+        List<Future<ByteBuffer>> futures = new ArrayList<>(ranges.size());
+        List<ByteBuffer> buffers = new ArrayList<>(ranges.size());
+        try {
+            for (Range range : ranges) {
+                // Wait for the oldest read before starting a new one.
+                if (futures.size() - buffers.size() >= parallelism) {
+                    buffers.add(futures.get(buffers.size()).get());
+                }
+                futures.add(executor.submit(() -> fetcher.fetch(range)));
+            }
+            while (buffers.size() < futures.size()) {
+                buffers.add(futures.get(buffers.size()).get());
+            }
+        } catch (InterruptedException ie) {
+            futures.forEach(future -> future.cancel(true));
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while reading ranges");
+        } catch (ExecutionException ee) {
+            futures.forEach(future -> future.cancel(true));
+            if (ee.getCause() instanceof IOException) {
+                throw (IOException) ee.getCause();
+            }
+            throw new IOException("could not read range", ee.getCause());
+        }
+        return buffers;
+    }
+
+    private ByteBuffer readRange(BlobId id, Range range) throws IOException {
+        ByteBuffer buffer = directBuffers
+                ? ByteBuffer.allocateDirect(range.getLength())
+                : ByteBuffer.allocate(range.getLength());
+        ReadChannel reader = storage.reader(id);
+        try {
+            // Fetch the range with as few requests as possible.
+            reader.setChunkSize(Math.max(1, Math.min(range.getLength(), MAX_RANGE_REQUEST_SIZE)));
+            reader.seek(range.getOffset());
+            while (buffer.hasRemaining()) {
+                if (reader.read(buffer) < 0) {
+                    throw new EOFException("reached the end of " + id + " with " + buffer.remaining()
+                            + " bytes left to read");
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * Returns the generation and the size of the object, so that {@link #read(String, String)} can open it without
+     * another request.
+     */
+    @Override
+    public String version(String path) throws IOException {
+        Blob blob = storage.get(getBlobId(path),
+                Storage.BlobGetOption.fields(Storage.BlobField.GENERATION, Storage.BlobField.SIZE));
+        if (blob == null) {
+            throw new FileNotFoundException(path);
+        }
+        return blob.getGeneration() + VERSION_SEPARATOR + blob.getSize();
     }
 
     @Override
     public SeekableByteChannel write(String path) throws IOException {
+        if (writePartSize != null) {
+            return new ComposeWriteChannel(storage, getBlobId(path), executor, writePartSize, writeParallelism,
+                    writeRetries, writeTemporaryPrefix);
+        }
         Blob blob = storage.create(BlobInfo.newBuilder(getBlobId(path)).build());
         WriteChannel writer = blob.writer();
         writer.setChunkSize(writeChunkSize);
@@ -125,6 +423,18 @@ public class GoogleCloudStorageBackend implements BinaryBackend {
         }
     }
 
+    /**
+     * Returns the id of the generation identified by the version, or of the live object if the version is null.
+     */
+    private BlobId getBlobId(String path, String version) throws IOException {
+        BlobId id = getBlobId(path);
+        int separator = version == null ? -1 : version.indexOf(VERSION_SEPARATOR);
+        if (separator < 0) {
+            return id;
+        }
+        return BlobId.of(id.getBucket(), id.getName(), Long.parseLong(version.substring(0, separator)));
+    }
+
     private BlobId getBlobId(String path) throws IOException {
         try {
             URI uri = new URI(path);
@@ -139,10 +449,98 @@ public class GoogleCloudStorageBackend implements BinaryBackend {
         }
     }
 
+    /**
+     * Reads one range of an object.
+     */
+    @FunctionalInterface
+    interface RangeFetcher {
+        ByteBuffer fetch(Range range) throws IOException;
+    }
+
+    /**
+     * Fetches the page of a listing starting at the given token (null for the first page).
+     */
+    @FunctionalInterface
+    interface PageFetcher {
+        ListPage fetch(String pageToken) throws IOException;
+    }
+
+    private static class PageState {
+
+        private String token;
+        private Future<ListPage> next;
+        private boolean done;
+
+        private PageState(String token) {
+            this.token = token;
+        }
+    }
+
+    /**
+     * A page of a listing.
+     */
+    public static class ListPage {
+
+        private final List<String> paths;
+        private final List<String> versions;
+        private final String nextPageToken;
+
+        public ListPage(List<String> paths, String nextPageToken) {
+            this(paths, null, nextPageToken);
+        }
+
+        /**
+         * @param versions the version of each path, or null if unknown.
+         */
+        public ListPage(List<String> paths, List<String> versions, String nextPageToken) {
+            if (versions != null && versions.size() != paths.size()) {
+                throw new IllegalArgumentException("one version per path expected");
+            }
+            this.paths = Objects.requireNonNull(paths);
+            this.versions = versions;
+            this.nextPageToken = nextPageToken;
+        }
+
+        public List<String> getPaths() {
+            return paths;
+        }
+
+        /**
+         * The paths with their versions, see {@link GoogleCloudStorageBackend#version(String)}.
+         */
+        public List<VersionedPath> getVersionedPaths() {
+            List<VersionedPath> versionedPaths = new ArrayList<>(paths.size());
+            for (int i = 0; i < paths.size(); i++) {
+                versionedPaths.add(new VersionedPath(paths.get(i), versions == null ? null : versions.get(i)));
+            }
+            return versionedPaths;
+        }
+
+        /**
+         * The token to resume the listing after this page, or null if this is the last page.
+         */
+        public String getNextPageToken() {
+            return nextPageToken;
+        }
+    }
+
     public static class Configuration {
 
         private Integer readChunkSize;
         private Integer writeChunkSize;
+        private Long readCacheSize;
+        private Boolean directBuffers;
+        private Integer readAheadChunks;
+        private Integer writePartSize;
+        private Integer writeParallelism;
+        private Integer writeRetries;
+        private String writeTemporaryPrefix;
+        private Long readRangeMaxGap;
+        private Integer readRangeParallelism;
+        private Integer listPageSize;
+        private Boolean listPrefetch;
+        private Boolean listReverseOrder;
+        private Integer listReverseOrderLimit;
 
         public Configuration() {
         }
@@ -162,5 +560,155 @@ public class GoogleCloudStorageBackend implements BinaryBackend {
         public void setWriteChunkSize(Integer writeChunkSize) {
             this.writeChunkSize = writeChunkSize;
         }
+
+        /**
+         * The maximum amount of bytes each read channel keeps in its chunk cache.
+         */
+        public Long getReadCacheSize() {
+            return readCacheSize;
+        }
+
+        public void setReadCacheSize(Long readCacheSize) {
+            this.readCacheSize = readCacheSize;
+        }
+
+        /**
+         * Whether the read chunks are allocated outside of the heap.
+         */
+        public Boolean getDirectBuffers() {
+            return directBuffers;
+        }
+
+        public void setDirectBuffers(Boolean directBuffers) {
+            this.directBuffers = directBuffers;
+        }
+
+        /**
+         * The number of chunks fetched in the background when a blob is read sequentially. Prefetched chunks
+         * are held in addition to the read cache. Defaults to 0 (disabled).
+         */
+        public Integer getReadAheadChunks() {
+            return readAheadChunks;
+        }
+
+        public void setReadAheadChunks(Integer readAheadChunks) {
+            this.readAheadChunks = readAheadChunks;
+        }
+
+        /**
+         * The size of the parts uploaded in parallel and composed on close. When not set the objects are
+         * written with a single resumable upload.
+         */
+        public Integer getWritePartSize() {
+            return writePartSize;
+        }
+
+        public void setWritePartSize(Integer writePartSize) {
+            this.writePartSize = writePartSize;
+        }
+
+        /**
+         * The maximum number of parts uploaded concurrently (and kept in memory) per object. Defaults to 4.
+         */
+        public Integer getWriteParallelism() {
+            return writeParallelism;
+        }
+
+        public void setWriteParallelism(Integer writeParallelism) {
+            this.writeParallelism = writeParallelism;
+        }
+
+        /**
+         * The number of times the upload of a part is retried. Defaults to 3.
+         */
+        public Integer getWriteRetries() {
+            return writeRetries;
+        }
+
+        public void setWriteRetries(Integer writeRetries) {
+            this.writeRetries = writeRetries;
+        }
+
+        /**
+         * The prefix, in the bucket of each object, of the parts uploaded when {@link #getWritePartSize()} is set.
+         * It must be outside of the data. Defaults to {@value ComposeWriteChannel#DEFAULT_TEMPORARY_PREFIX}.
+         */
+        public String getWriteTemporaryPrefix() {
+            return writeTemporaryPrefix;
+        }
+
+        public void setWriteTemporaryPrefix(String writeTemporaryPrefix) {
+            this.writeTemporaryPrefix = writeTemporaryPrefix;
+        }
+
+        /**
+         * The maximum number of bytes between two ranges read together by
+         * {@link GoogleCloudStorageBackend#readRanges(String, List)}. Defaults to 1 MiB.
+         */
+        public Long getReadRangeMaxGap() {
+            return readRangeMaxGap;
+        }
+
+        public void setReadRangeMaxGap(Long readRangeMaxGap) {
+            this.readRangeMaxGap = readRangeMaxGap;
+        }
+
+        /**
+         * The maximum number of concurrent requests of one call to
+         * {@link GoogleCloudStorageBackend#readRanges(String, List)}. Defaults to 8.
+         */
+        public Integer getReadRangeParallelism() {
+            return readRangeParallelism;
+        }
+
+        public void setReadRangeParallelism(Integer readRangeParallelism) {
+            this.readRangeParallelism = readRangeParallelism;
+        }
+
+        /**
+         * The maximum number of objects per page when listing. Defaults to the service default (1000).
+         */
+        public Integer getListPageSize() {
+            return listPageSize;
+        }
+
+        public void setListPageSize(Integer listPageSize) {
+            this.listPageSize = listPageSize;
+        }
+
+        /**
+         * Whether the next page of a listing is fetched while the current one is consumed. Defaults to true.
+         */
+        public Boolean getListPrefetch() {
+            return listPrefetch;
+        }
+
+        public void setListPrefetch(Boolean listPrefetch) {
+            this.listPrefetch = listPrefetch;
+        }
+
+        /**
+         * Whether {@link GoogleCloudStorageBackend#list(String)} buffers the listing to emit it in reverse name
+         * order instead of streaming it in name order. Defaults to false.
+         */
+        public Boolean getListReverseOrder() {
+            return listReverseOrder;
+        }
+
+        public void setListReverseOrder(Boolean listReverseOrder) {
+            this.listReverseOrder = listReverseOrder;
+        }
+
+        /**
+         * The maximum number of paths buffered when {@link #getListReverseOrder()} is true; larger listings fail.
+         * Defaults to {@value GoogleCloudStorageBackend#DEFAULT_REVERSE_ORDER_LIMIT}.
+         */
+        public Integer getListReverseOrderLimit() {
+            return listReverseOrderLimit;
+        }
+
+        public void setListReverseOrderLimit(Integer listReverseOrderLimit) {
+            this.listReverseOrderLimit = listReverseOrderLimit;
+        }
     }
 }
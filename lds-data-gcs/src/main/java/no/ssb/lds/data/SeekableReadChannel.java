@@ -3,29 +3,98 @@ package no.ssb.lds.data;
 import com.google.cloud.ReadChannel;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.nio.ByteBuffer;
 import java.nio.channels.NonWritableChannelException;
 import java.nio.channels.SeekableByteChannel;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.Map;
-import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
 
 /**
  * Implements {@link SeekableByteChannel} over {@link ReadChannel}.
+ * <p>
+ * Chunks are kept in a LRU cache limited to cacheSize bytes. Evicted buffers are reused for the next chunks
+ * so reading a blob of any size uses a constant amount of memory.
+ * <p>
+ * When read-ahead is enabled and the chunks are read sequentially, the next chunks are fetched in the background
+ * using new channels so that the network and the consumer work at the same time. Seeks to other parts of the blob
+ * (footer, random access) do not trigger any prefetch, and cancel the prefetched chunks that are no longer ahead
+ * of the position, so that at most readAheadChunks chunks are held in addition to the cache.
  */
 public class SeekableReadChannel implements java.nio.channels.SeekableByteChannel {
 
-    private final Map<Long, ByteBuffer> buffers = new TreeMap<>();
+    public static final int DEFAULT_CACHED_CHUNKS = 8;
+
+    // Number of consecutive chunks read before the access is considered sequential.
+    private static final int SEQUENTIAL_THRESHOLD = 2;
+
+    // Access ordered, the eldest entry is the least recently used.
+    private final Map<Long, ByteBuffer> buffers = new LinkedHashMap<>(16, 0.75f, true);
     private final ReadChannel delegate;
     private final Integer chunkSize;
     private final long size;
+    private final long cacheSize;
+    private final boolean direct;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final Map<Long, Future<ByteBuffer>> prefetched = new HashMap<>();
+    private final Supplier<ReadChannel> readAheadChannels;
+    private final ExecutorService executor;
+    private final int readAheadChunks;
+    private long cachedBytes = 0;
+    private ByteBuffer free;
     private long pos;
-
+    private long lastChunk = -1;
+    private int sequentialChunks = 0;
 
     public SeekableReadChannel(ReadChannel delegate, Integer chunkSize, Long size) {
+        this(delegate, chunkSize, size, (long) chunkSize * DEFAULT_CACHED_CHUNKS, false);
+    }
+
+    /**
+     * Create a new channel.
+     *
+     * @param delegate  the channel to read from.
+     * @param chunkSize the size of the chunks read from the delegate.
+     * @param size      the size of the blob.
+     * @param cacheSize the maximum amount of bytes kept in the cache. At least one chunk is always kept.
+     * @param direct    whether to allocate the chunks outside of the heap.
+     */
+    public SeekableReadChannel(ReadChannel delegate, Integer chunkSize, Long size, Long cacheSize, boolean direct) {
+        this(delegate, chunkSize, size, cacheSize, direct, null, null, 0);
+    }
+
+    /**
+     * Create a new channel with read-ahead.
+     *
+     * @param delegate          the channel to read from.
+     * @param chunkSize         the size of the chunks read from the delegate.
+     * @param size              the size of the blob.
+     * @param cacheSize         the maximum amount of bytes kept in the cache. At least one chunk is always kept.
+     * @param direct            whether to allocate the chunks outside of the heap.
+     * @param readAheadChannels supplies the channels used to prefetch chunks.
+     * @param executor          the executor the chunks are prefetched on.
+     * @param readAheadChunks   the number of chunks to fetch ahead of the current position, 0 disables read-ahead.
+     */
+    public SeekableReadChannel(ReadChannel delegate, Integer chunkSize, Long size, Long cacheSize, boolean direct,
+                               Supplier<ReadChannel> readAheadChannels, ExecutorService executor,
+                               int readAheadChunks) {
         this.chunkSize = chunkSize;
         this.delegate = delegate;
         this.delegate.setChunkSize(chunkSize);
         this.size = size;
+        this.cacheSize = Math.max(cacheSize, chunkSize);
+        this.direct = direct;
+        this.readAheadChannels = readAheadChannels;
+        this.executor = executor;
+        this.readAheadChunks = readAheadChannels != null && executor != null ? readAheadChunks : 0;
     }
 
     @Override
@@ -43,26 +112,149 @@ public class SeekableReadChannel implements java.nio.channels.SeekableByteChanne
 
     private ByteBuffer buffer(long position) throws IOException {
         Long chunkStart = chunkPosition(position);
-        ByteBuffer buffer;
-        if (!buffers.containsKey(chunkStart)) {
-            buffer = ByteBuffer.allocate(chunkSize);
+        ByteBuffer buffer = buffers.get(chunkStart);
+        if (buffer == null) {
+            buffer = awaitPrefetched(chunkStart);
+        }
+        if (buffer == null) {
+            misses.incrementAndGet();
+            buffer = allocate();
             delegate.seek(chunkStart);
-            while (buffer.hasRemaining()) {
-                int read = delegate.read(buffer);
-                if (read < 0) {
-                    break;
-                }
-            }
-            buffer.limit(buffer.position());
-            buffers.put(chunkStart, buffer);
+            fill(delegate, buffer);
+            cache(chunkStart, buffer);
         } else {
-            buffer = buffers.get(chunkStart);
+            hits.incrementAndGet();
         }
+        readAhead(chunkStart);
         ByteBuffer copy = buffer.duplicate();
         copy.position(Math.toIntExact(position - chunkStart));
         return copy.slice();
     }
 
+    private static void fill(ReadChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer);
+            if (read < 0) {
+                break;
+            }
+        }
+        buffer.limit(buffer.position());
+    }
+
+    /**
+     * Returns the prefetched chunk, waiting for it if needed, or null if the chunk was not prefetched.
+     */
+    private ByteBuffer awaitPrefetched(Long chunkStart) throws IOException {
+        Future<ByteBuffer> future = prefetched.remove(chunkStart);
+        if (future == null) {
+            return null;
+        }
+        try {
+            ByteBuffer buffer = future.get();
+            cache(chunkStart, buffer);
+            return buffer;
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while waiting for chunk " + chunkStart);
+        } catch (ExecutionException ee) {
+            // Fetch it again synchronously.
+            return null;
+        }
+    }
+
+    /**
+     * Prefetch the next chunks if the chunks are read sequentially.
+     */
+    private void readAhead(long chunkStart) {
+        if (readAheadChunks <= 0 || chunkStart == lastChunk) {
+            return;
+        }
+        sequentialChunks = chunkStart == lastChunk + chunkSize ? sequentialChunks + 1 : 0;
+        lastChunk = chunkStart;
+        // Drop the chunks that are not ahead of the position anymore, they would never be read.
+        long windowEnd = chunkStart + (long) readAheadChunks * chunkSize;
+        Iterator<Map.Entry<Long, Future<ByteBuffer>>> entries = prefetched.entrySet().iterator();
+        while (entries.hasNext()) {
+            Map.Entry<Long, Future<ByteBuffer>> entry = entries.next();
+            if (sequentialChunks < SEQUENTIAL_THRESHOLD || entry.getKey() <= chunkStart
+                    || entry.getKey() > windowEnd) {
+                entry.getValue().cancel(true);
+                entries.remove();
+            }
+        }
+        if (sequentialChunks < SEQUENTIAL_THRESHOLD) {
+            return;
+        }
+        for (int i = 1; i <= readAheadChunks; i++) {
+            long next = chunkStart + (long) i * chunkSize;
+            if (next >= size) {
+                break;
+            }
+            if (buffers.containsKey(next) || prefetched.containsKey(next)) {
+                continue;
+            }
+            if (prefetched.size() >= readAheadChunks) {
+                break;
+            }
+            ByteBuffer buffer = allocate();
+            prefetched.put(next, executor.submit(() -> {
+                ReadChannel channel = readAheadChannels.get();
+                try {
+                    channel.setChunkSize(chunkSize);
+                    channel.seek(next);
+                    fill(channel, buffer);
+                    return buffer;
+                } finally {
+                    channel.close();
+                }
+            }));
+        }
+    }
+
+    private ByteBuffer allocate() {
+        if (free != null) {
+            ByteBuffer buffer = free;
+            free = null;
+            buffer.clear();
+            return buffer;
+        }
+        return direct ? ByteBuffer.allocateDirect(chunkSize) : ByteBuffer.allocate(chunkSize);
+    }
+
+    private void cache(Long chunkStart, ByteBuffer buffer) {
+        buffers.put(chunkStart, buffer);
+        cachedBytes += buffer.capacity();
+        Iterator<ByteBuffer> eldest = buffers.values().iterator();
+        while (cachedBytes > cacheSize && buffers.size() > 1) {
+            ByteBuffer evicted = eldest.next();
+            eldest.remove();
+            cachedBytes -= evicted.capacity();
+            // Keep one buffer around to avoid allocating a new one for the next miss.
+            free = evicted;
+        }
+    }
+
+    /**
+     * Returns the number of reads served from the cache.
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * Returns the number of reads that had to fetch a chunk.
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Returns the number of chunks being prefetched or waiting to be read.
+     */
+    int getPrefetchedChunks() {
+        return prefetched.size();
+    }
+
     @Override
     public int write(ByteBuffer src) {
         throw new NonWritableChannelException();
@@ -96,6 +288,13 @@ public class SeekableReadChannel implements java.nio.channels.SeekableByteChanne
 
     @Override
     public void close() {
+        for (Future<ByteBuffer> future : prefetched.values()) {
+            future.cancel(true);
+        }
+        prefetched.clear();
+        buffers.clear();
+        free = null;
+        cachedBytes = 0;
         delegate.close();
     }
-}
\ No newline at end of file
+}
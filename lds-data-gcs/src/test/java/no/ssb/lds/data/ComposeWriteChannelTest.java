@@ -0,0 +1,171 @@
+package no.ssb.lds.data;
+
+import com.google.cloud.storage.BlobId;
+import com.google.cloud.storage.BlobInfo;
+import com.google.cloud.storage.Storage;
+import com.google.cloud.storage.StorageException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ComposeWriteChannelTest {
+
+    private Map<String, byte[]> objects;
+    private List<String> created;
+    private List<String> attempts;
+    private AtomicInteger failures;
+    private AtomicInteger deletes;
+    private int failure;
+    private Storage storage;
+    private ExecutorService executor;
+
+    @BeforeEach
+    void setUp() {
+        objects = new ConcurrentHashMap<>();
+        created = new CopyOnWriteArrayList<>();
+        attempts = new CopyOnWriteArrayList<>();
+        failures = new AtomicInteger();
+        deletes = new AtomicInteger();
+        failure = 503;
+        executor = Executors.newFixedThreadPool(4);
+        // Minimal in memory storage supporting create, compose and delete.
+        storage = (Storage) Proxy.newProxyInstance(getClass().getClassLoader(), new Class[]{Storage.class},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "create":
+                            attempts.add(((BlobInfo) args[0]).getName());
+                            if (failures.getAndDecrement() > 0) {
+                                throw new StorageException(failure, "failure");
+                            }
+                            byte[] bytes = (byte[]) args[1];
+                            if (args[2] instanceof Integer) {
+                                int offset = (Integer) args[2];
+                                bytes = Arrays.copyOfRange(bytes, offset, offset + (Integer) args[3]);
+                            }
+                            objects.put(((BlobInfo) args[0]).getName(), bytes);
+                            created.add(((BlobInfo) args[0]).getName());
+                            return null;
+                        case "compose":
+                            Storage.ComposeRequest request = (Storage.ComposeRequest) args[0];
+                            ByteArrayOutputStream content = new ByteArrayOutputStream();
+                            for (Storage.ComposeRequest.SourceBlob source : request.getSourceBlobs()) {
+                                content.write(objects.get(source.getName()));
+                            }
+                            objects.put(request.getTarget().getName(), content.toByteArray());
+                            return null;
+                        case "delete":
+                            deletes.incrementAndGet();
+                            if (args[0] instanceof Iterable) {
+                                List<Boolean> deleted = new ArrayList<>();
+                                for (Object id : (Iterable<?>) args[0]) {
+                                    deleted.add(objects.remove(((BlobId) id).getName()) != null);
+                                }
+                                return deleted;
+                            }
+                            return objects.remove(((BlobId) args[0]).getName()) != null;
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void testManyParts() throws Exception {
+        byte[] data = new byte[10 * 100 + 7];
+        new Random(42).nextBytes(data);
+
+        ComposeWriteChannel channel = new ComposeWriteChannel(storage, BlobId.of("bucket", "target"), executor,
+                10, 3, 0);
+        for (int i = 0; i < data.length; i += 33) {
+            channel.write(ByteBuffer.wrap(data, i, Math.min(33, data.length - i)));
+        }
+        channel.close();
+
+        assertThat(channel.size()).isEqualTo(data.length);
+        // The parts are written outside of the data and deleted with the intermediate objects.
+        assertThat(created).hasSize(101)
+                .allMatch(name -> name.startsWith(ComposeWriteChannel.DEFAULT_TEMPORARY_PREFIX));
+        assertThat(objects).containsOnlyKeys("target");
+        assertThat(objects.get("target")).isEqualTo(data);
+        // In one batch.
+        assertThat(deletes).hasValue(1);
+    }
+
+    @Test
+    void testSinglePart() throws Exception {
+        ComposeWriteChannel channel = new ComposeWriteChannel(storage, BlobId.of("bucket", "target"), executor,
+                10, 3, 0);
+        channel.write(ByteBuffer.wrap(new byte[]{1, 2, 3}));
+        channel.close();
+
+        assertThat(objects).containsOnlyKeys("target");
+        assertThat(objects.get("target")).containsExactly(1, 2, 3);
+    }
+
+    @Test
+    void testRetry() throws Exception {
+        failures.set(2);
+        ComposeWriteChannel channel = new ComposeWriteChannel(storage, BlobId.of("bucket", "target"), executor,
+                10, 1, 2);
+        channel.write(ByteBuffer.wrap(new byte[25]));
+        channel.close();
+
+        assertThat(objects).containsOnlyKeys("target");
+        assertThat(objects.get("target")).hasSize(25);
+    }
+
+    @Test
+    void testNonRetryableFailure() throws Exception {
+        failures.set(1);
+        failure = 403;
+        ComposeWriteChannel channel = new ComposeWriteChannel(storage, BlobId.of("bucket", "target"), executor,
+                10, 1, 2);
+
+        assertThatThrownBy(() -> {
+            channel.write(ByteBuffer.wrap(new byte[25]));
+            channel.close();
+        }).isInstanceOf(IOException.class);
+        // Not retried.
+        assertThat(attempts).filteredOn(name -> name.endsWith("part-000000")).hasSize(1);
+        assertThat(objects).isEmpty();
+    }
+
+    @Test
+    void testFailureDeletesParts() throws Exception {
+        ComposeWriteChannel channel = new ComposeWriteChannel(storage, BlobId.of("bucket", "target"), executor,
+                10, 2, 0);
+        channel.write(ByteBuffer.wrap(new byte[20]));
+        failures.set(Integer.MAX_VALUE);
+
+        assertThatThrownBy(() -> {
+            channel.write(ByteBuffer.wrap(new byte[25]));
+            channel.close();
+        }).isInstanceOf(IOException.class);
+        assertThat(channel.isOpen()).isFalse();
+        assertThat(objects).isEmpty();
+        assertThat(deletes).hasValue(1);
+    }
+}
@@ -0,0 +1,151 @@
+package no.ssb.lds.data;
+
+import io.reactivex.Flowable;
+import io.reactivex.subscribers.TestSubscriber;
+import no.ssb.lds.data.GoogleCloudStorageBackend.ListPage;
+import no.ssb.lds.data.client.Range;
+import no.ssb.lds.data.client.VersionedPath;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class GoogleCloudStorageBackendTest {
+
+    private ExecutorService executor;
+    private List<String> fetched;
+
+    @BeforeEach
+    void setUp() {
+        executor = Executors.newSingleThreadExecutor();
+        fetched = Collections.synchronizedList(new ArrayList<>());
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    // Three pages of two paths, the tokens are the index of the page.
+    private ListPage fetch(String token) {
+        int page = token == null ? 0 : Integer.parseInt(token);
+        fetched.add(String.valueOf(page));
+        return new ListPage(
+                List.of("gs://bucket/" + (page * 2), "gs://bucket/" + (page * 2 + 1)),
+                page < 2 ? String.valueOf(page + 1) : null
+        );
+    }
+
+    @Test
+    void testPages() {
+        List<String> paths = GoogleCloudStorageBackend.pages(this::fetch, null, null)
+                .concatMapIterable(ListPage::getPaths).toList().blockingGet();
+        assertThat(paths).containsExactly("gs://bucket/0", "gs://bucket/1", "gs://bucket/2", "gs://bucket/3",
+                "gs://bucket/4", "gs://bucket/5");
+    }
+
+    @Test
+    void testVersionedPaths() {
+        ListPage page = new ListPage(List.of("gs://bucket/a", "gs://bucket/b/"), Arrays.asList("1:10", null), null);
+        assertThat(page.getVersionedPaths()).extracting(VersionedPath::toString)
+                .containsExactly("gs://bucket/a@1:10", "gs://bucket/b/");
+        assertThat(new ListPage(List.of("gs://bucket/a"), null).getVersionedPaths())
+                .extracting(VersionedPath::getVersion).containsOnlyNulls();
+    }
+
+    @Test
+    void testPagesResume() {
+        List<String> paths = GoogleCloudStorageBackend.pages(this::fetch, "2", null)
+                .concatMapIterable(ListPage::getPaths).toList().blockingGet();
+        assertThat(paths).containsExactly("gs://bucket/4", "gs://bucket/5");
+    }
+
+    @Test
+    void testPagesAreFetchedOnDemand() {
+        ListPage first = GoogleCloudStorageBackend.pages(this::fetch, null, null).blockingFirst();
+        assertThat(first.getNextPageToken()).isEqualTo("1");
+        assertThat(fetched).containsExactly("0");
+    }
+
+    @Test
+    void testPagesPrefetch() throws Exception {
+        Flowable<ListPage> pages = GoogleCloudStorageBackend.pages(this::fetch, null, executor);
+        assertThat(pages.concatMapIterable(ListPage::getPaths).toList().blockingGet()).hasSize(6);
+
+        // The second page is fetched while the first one is consumed.
+        fetched.clear();
+        TestSubscriber<ListPage> subscriber = pages.test(1);
+        executor.submit(() -> null).get();
+        assertThat(fetched).containsExactly("0", "1");
+        subscriber.assertValueCount(1).cancel();
+    }
+
+    @Test
+    void testPagesError() {
+        Flowable<ListPage> pages = GoogleCloudStorageBackend.pages(token -> {
+            if (token != null) {
+                throw new IOException("failed");
+            }
+            return new ListPage(List.of("gs://bucket/0"), "1");
+        }, null, executor);
+        pages.concatMapIterable(ListPage::getPaths).test().awaitDone(1, TimeUnit.SECONDS)
+                .assertValue("gs://bucket/0")
+                .assertError(IOException.class);
+    }
+
+    @Test
+    void testReadAllIsBounded() throws Exception {
+        ExecutorService pool = Executors.newCachedThreadPool();
+        try {
+            AtomicInteger running = new AtomicInteger();
+            AtomicInteger maxRunning = new AtomicInteger();
+            List<Range> ranges = new ArrayList<>();
+            for (int i = 0; i < 20; i++) {
+                ranges.add(new Range(i * 10, 10));
+            }
+            List<ByteBuffer> buffers = GoogleCloudStorageBackend.readAll(ranges, range -> {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                try {
+                    Thread.sleep(5);
+                } catch (InterruptedException ie) {
+                    throw new InterruptedIOException();
+                } finally {
+                    running.decrementAndGet();
+                }
+                return ByteBuffer.allocate(Long.BYTES).putLong(0, range.getOffset());
+            }, pool, 3);
+
+            assertThat(buffers).hasSize(20);
+            assertThat(buffers.get(19).getLong(0)).isEqualTo(190);
+            assertThat(maxRunning.get()).isBetween(1, 3);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    void testReverseOrder() {
+        Flowable<String> paths = Flowable.just("a", "c", "b");
+        assertThat(GoogleCloudStorageBackend.reverseOrder(paths, 3).toList().blockingGet())
+                .containsExactly("c", "b", "a");
+        GoogleCloudStorageBackend.reverseOrder(paths, 2).test().assertError(IOException.class);
+        // Only limit + 1 paths are requested before failing.
+        List<String> requested = new ArrayList<>();
+        GoogleCloudStorageBackend.reverseOrder(Flowable.range(0, 1_000).map(String::valueOf)
+                .doOnNext(requested::add), 10).test().assertError(IOException.class);
+        assertThat(requested).hasSize(11);
+    }
+}
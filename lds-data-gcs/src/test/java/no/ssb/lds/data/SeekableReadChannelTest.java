@@ -0,0 +1,176 @@
+package no.ssb.lds.data;
+
+import com.google.cloud.ReadChannel;
+import com.google.cloud.RestorableState;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SeekableReadChannelTest {
+
+    private static final int CHUNK_SIZE = 16;
+
+    private byte[] content;
+    private List<Long> fetched;
+    private ExecutorService executor;
+
+    @BeforeEach
+    void setUp() {
+        content = new byte[CHUNK_SIZE * 10];
+        for (int i = 0; i < content.length; i++) {
+            content[i] = (byte) i;
+        }
+        fetched = Collections.synchronizedList(new ArrayList<>());
+        executor = Executors.newFixedThreadPool(2);
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void testReadAll() throws Exception {
+        SeekableReadChannel channel = new SeekableReadChannel(new ByteArrayReadChannel(), CHUNK_SIZE,
+                (long) content.length, (long) CHUNK_SIZE * 2, true);
+
+        ByteBuffer dst = ByteBuffer.allocate(content.length);
+        while (dst.hasRemaining() && channel.read(dst) >= 0) {
+            // Read until the end.
+        }
+
+        assertThat(dst.array()).isEqualTo(content);
+        assertThat(fetched).containsExactly(0L, 16L, 32L, 48L, 64L, 80L, 96L, 112L, 128L, 144L);
+    }
+
+    @Test
+    void testEviction() throws Exception {
+        SeekableReadChannel channel = new SeekableReadChannel(new ByteArrayReadChannel(), CHUNK_SIZE,
+                (long) content.length, (long) CHUNK_SIZE * 2, false);
+
+        readAt(channel, 0);
+        readAt(channel, 20);
+        readAt(channel, 4);
+        assertThat(channel.getMisses()).isEqualTo(2);
+        assertThat(channel.getHits()).isEqualTo(1);
+
+        // Chunk 16 is the least recently used and gets evicted.
+        readAt(channel, 40);
+        readAt(channel, 8);
+        readAt(channel, 24);
+        assertThat(fetched).containsExactly(0L, 16L, 32L, 16L);
+        assertThat(channel.getMisses()).isEqualTo(4);
+        assertThat(channel.getHits()).isEqualTo(2);
+    }
+
+    @Test
+    void testReadAheadSequential() throws Exception {
+        SeekableReadChannel channel = new SeekableReadChannel(new ByteArrayReadChannel(), CHUNK_SIZE,
+                (long) content.length, (long) CHUNK_SIZE * 2, false, ByteArrayReadChannel::new, executor, 2);
+
+        ByteBuffer dst = ByteBuffer.allocate(content.length);
+        while (dst.hasRemaining() && channel.read(dst) >= 0) {
+            // Read until the end.
+        }
+
+        assertThat(dst.array()).isEqualTo(content);
+        // Only the chunks read before the access is detected as sequential are fetched synchronously.
+        assertThat(channel.getMisses()).isEqualTo(3);
+        assertThat(fetched).containsExactlyInAnyOrder(0L, 16L, 32L, 48L, 64L, 80L, 96L, 112L, 128L, 144L);
+    }
+
+    @Test
+    void testReadAheadRandom() throws Exception {
+        SeekableReadChannel channel = new SeekableReadChannel(new ByteArrayReadChannel(), CHUNK_SIZE,
+                (long) content.length, (long) CHUNK_SIZE * 2, false, ByteArrayReadChannel::new, executor, 2);
+
+        readAt(channel, 150);
+        readAt(channel, 0);
+        readAt(channel, 70);
+        readAt(channel, 20);
+
+        assertThat(fetched).containsExactly(144L, 0L, 64L, 16L);
+    }
+
+    @Test
+    void testReadAheadDropsSkippedChunks() throws Exception {
+        SeekableReadChannel channel = new SeekableReadChannel(new ByteArrayReadChannel(), CHUNK_SIZE,
+                (long) content.length, (long) CHUNK_SIZE * 2, false, ByteArrayReadChannel::new, executor, 2);
+
+        // Sequential reads prefetch the next two chunks.
+        readAt(channel, 0);
+        readAt(channel, 16);
+        readAt(channel, 32);
+        assertThat(channel.getPrefetchedChunks()).isEqualTo(2);
+
+        // Skipping ahead drops them, they would never be read.
+        readAt(channel, 112);
+        assertThat(channel.getPrefetchedChunks()).isZero();
+
+        // A new sequential run keeps at most readAheadChunks chunks.
+        readAt(channel, 128);
+        readAt(channel, 144);
+        readAt(channel, 0);
+        readAt(channel, 16);
+        readAt(channel, 32);
+        readAt(channel, 48);
+        assertThat(channel.getPrefetchedChunks()).isLessThanOrEqualTo(2);
+        channel.close();
+    }
+
+    private void readAt(SeekableReadChannel channel, long position) throws Exception {
+        ByteBuffer dst = ByteBuffer.allocate(1);
+        channel.position(position);
+        channel.read(dst);
+        assertThat(dst.get(0)).isEqualTo(content[(int) position]);
+    }
+
+    private class ByteArrayReadChannel implements ReadChannel {
+
+        private int position;
+
+        @Override
+        public void close() {
+        }
+
+        @Override
+        public void seek(long position) {
+            fetched.add(position);
+            this.position = (int) position;
+        }
+
+        @Override
+        public void setChunkSize(int chunkSize) {
+        }
+
+        @Override
+        public RestorableState<ReadChannel> capture() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public int read(ByteBuffer dst) {
+            if (position >= content.length) {
+                return -1;
+            }
+            int length = Math.min(dst.remaining(), content.length - position);
+            dst.put(content, position, length);
+            position += length;
+            return length;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+    }
+}
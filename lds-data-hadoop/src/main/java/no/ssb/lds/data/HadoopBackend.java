@@ -2,79 +2,143 @@ package no.ssb.lds.data;
 
 import io.reactivex.Flowable;
 import no.ssb.lds.data.client.BinaryBackend;
+import no.ssb.lds.data.client.Range;
+import no.ssb.lds.data.client.VersionedPath;
 import org.apache.hadoop.fs.ByteBufferReadable;
 import org.apache.hadoop.fs.FSDataInputStream;
 import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileStatus;
 import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.LocatedFileStatus;
 import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.PositionedReadable;
+import org.apache.hadoop.fs.RemoteIterator;
 
+import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.NonWritableChannelException;
 import java.nio.channels.SeekableByteChannel;
+import java.util.ArrayList;
+import java.util.List;
 
 public class HadoopBackend implements BinaryBackend {
 
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+
     private final FileSystem fileSystem;
+    private final Path root;
 
+    /**
+     * Create a backend that never removes directories.
+     */
     public HadoopBackend(FileSystem fileSystem) {
         this.fileSystem = fileSystem;
+        this.root = null;
+    }
+
+    /**
+     * Create a backend that removes the directories left empty by {@link #delete(String)} below the root.
+     *
+     * @param root the base location of the data. It and the directories above it are never removed.
+     */
+    public HadoopBackend(FileSystem fileSystem, String root) {
+        this.fileSystem = fileSystem;
+        this.root = fileSystem.makeQualified(new Path(root));
     }
 
+    /**
+     * Returns the files whose path starts with the given path.
+     * <p>
+     * The files are listed recursively and emitted as the listing progresses, in no particular order. The paths
+     * are returned in the form of the given path (ie. without scheme if the given path does not have one).
+     */
     @Override
     public Flowable<String> list(String path) throws IOException {
-        return null;
+        return listVersions(path).map(VersionedPath::getPath);
     }
 
+    /**
+     * Returns the files like {@link #list(String)}, with the version computed from the status of the listing.
+     */
     @Override
-    public SeekableByteChannel read(String path) throws IOException {
-        Path fsPath = new Path(path);
-        FSDataInputStream dataInputStream = fileSystem.open(fsPath);
-        return new SeekableByteChannel() {
-            @Override
-            public int read(ByteBuffer dst) throws IOException {
-                if (dataInputStream.getWrappedStream() instanceof ByteBufferReadable) {
-                    return dataInputStream.read(dst);
-                } else {
-                    return dataInputStream.read(dst.array(), dst.position(), dst.remaining());
-                }
-            }
-
-            @Override
-            public int write(ByteBuffer src) throws IOException {
-                throw new IOException("not writable");
-            }
-
-            @Override
-            public long position() throws IOException {
-                return dataInputStream.getPos();
+    public Flowable<VersionedPath> listVersions(String path) throws IOException {
+        boolean directory = path.endsWith("/");
+        Path parent = directory ? new Path(path) : new Path(path).getParent();
+        if (parent == null) {
+            return Flowable.empty();
+        }
+        // The listed paths are qualified (relative paths are resolved against the working directory).
+        Path fsDirectory = fileSystem.makeQualified(parent);
+        String qualifiedDirectory = fsDirectory.toUri().getPath();
+        int directoryLength = qualifiedDirectory.endsWith("/")
+                ? qualifiedDirectory.length() - 1
+                : qualifiedDirectory.length();
+        int separator = path.lastIndexOf('/');
+        String originalDirectory = path.substring(0, Math.max(separator, 0));
+        return Flowable.<FileStatus, RemoteIterator<LocatedFileStatus>>generate(() -> {
+            try {
+                return fileSystem.listFiles(fsDirectory, true);
+            } catch (FileNotFoundException fnfe) {
+                return null;
             }
-
-            @Override
-            public SeekableByteChannel position(long newPosition) throws IOException {
-                dataInputStream.seek(newPosition);
-                return this;
+        }, (files, emitter) -> {
+            if (files == null || !files.hasNext()) {
+                emitter.onComplete();
+            } else {
+                emitter.onNext(files.next());
             }
+        }).map(status -> {
+            String relative = status.getPath().toUri().getPath().substring(directoryLength);
+            String file = separator < 0 ? relative.substring(1) : originalDirectory + relative;
+            return new VersionedPath(file, version(status));
+        }).filter(file -> file.getPath().startsWith(path));
+    }
 
-            @Override
-            public long size() throws IOException {
-                return fileSystem.getFileStatus(fsPath).getLen();
-            }
+    /**
+     * Opens a read only channel on the file.
+     * <p>
+     * The length of the file is read once. The channel keeps its own position and uses positional reads
+     * ({@link PositionedReadable}), so the underlying stream is never seeked for heap buffers. Direct buffers are
+     * read with {@link ByteBufferReadable} when the file system supports it.
+     */
+    @Override
+    public SeekableByteChannel read(String path) throws IOException {
+        Path fsPath = new Path(path);
+        FSDataInputStream input = fileSystem.open(fsPath);
+        try {
+            return new PositionalReadChannel(input, fileSystem.getFileStatus(fsPath).getLen());
+        } catch (IOException | RuntimeException e) {
+            input.close();
+            throw e;
+        }
+    }
 
-            @Override
-            public SeekableByteChannel truncate(long size) throws IOException {
-                throw new IOException("not writable");
+    /**
+     * Reads the merged ranges with positional reads on one stream.
+     */
+    @Override
+    public List<ByteBuffer> readRanges(String path, List<Range> ranges) throws IOException {
+        List<Range> merged = Range.coalesce(ranges, DEFAULT_MAX_GAP);
+        List<ByteBuffer> buffers = new ArrayList<>(merged.size());
+        try (FSDataInputStream input = fileSystem.open(new Path(path))) {
+            for (Range range : merged) {
+                byte[] bytes = new byte[range.getLength()];
+                input.readFully(range.getOffset(), bytes);
+                buffers.add(ByteBuffer.wrap(bytes));
             }
+        }
+        return Range.slice(ranges, merged, buffers);
+    }
 
-            @Override
-            public boolean isOpen() {
-                return true;
-            }
+    @Override
+    public String version(String path) throws IOException {
+        return version(fileSystem.getFileStatus(new Path(path)));
+    }
 
-            @Override
-            public void close() throws IOException {
-                dataInputStream.close();
-            }
-        };
+    private static String version(FileStatus status) {
+        return status.getModificationTime() + "-" + status.getLen();
     }
 
     @Override
@@ -90,8 +154,17 @@ public class HadoopBackend implements BinaryBackend {
             @Override
             public int write(ByteBuffer src) throws IOException {
                 int len = src.remaining();
-                dataOutputStream.write(src.array(), src.position(), len);
-                src.position(src.position() + src.remaining());
+                if (src.hasArray()) {
+                    dataOutputStream.write(src.array(), src.arrayOffset() + src.position(), len);
+                    src.position(src.position() + len);
+                } else {
+                    byte[] bytes = new byte[Math.min(len, COPY_BUFFER_SIZE)];
+                    while (src.hasRemaining()) {
+                        int count = Math.min(src.remaining(), bytes.length);
+                        src.get(bytes, 0, count);
+                        dataOutputStream.write(bytes, 0, count);
+                    }
+                }
                 return len;
             }
 
@@ -106,8 +179,8 @@ public class HadoopBackend implements BinaryBackend {
             }
 
             @Override
-            public long size() throws IOException {
-                return fileSystem.getFileStatus(fsPath).getLen();
+            public long size() {
+                return dataOutputStream.getPos();
             }
 
             @Override
@@ -129,13 +202,144 @@ public class HadoopBackend implements BinaryBackend {
 
     @Override
     public void move(String from, String to) throws IOException {
-        fileSystem.rename(new Path(from), new Path(to));
+        Path destination = new Path(to);
+        // Rename does not replace files.
+        if (fileSystem.isFile(destination)) {
+            fileSystem.delete(destination, false);
+        }
+        fileSystem.mkdirs(destination.getParent());
+        if (!fileSystem.rename(new Path(from), destination)) {
+            throw new IOException("Could not move " + from + " to " + to);
+        }
     }
 
+    /**
+     * Deletes the file and the directories it leaves empty below the root, if the backend has one.
+     */
     @Override
     public void delete(String path) throws IOException {
-        if (!fileSystem.delete(new Path(path), false)) {
+        Path fsPath = new Path(path);
+        if (!fileSystem.isFile(fsPath)) {
+            throw new FileNotFoundException(path);
+        }
+        if (!fileSystem.delete(fsPath, false)) {
             throw new IOException("Could not delete " + path);
         }
+        if (root == null) {
+            return;
+        }
+        String rootPath = root.toUri().getPath();
+        String rootPrefix = rootPath.endsWith("/") ? rootPath : rootPath + "/";
+        for (Path directory = fileSystem.makeQualified(fsPath).getParent();
+             directory != null && directory.toUri().getPath().startsWith(rootPrefix);
+             directory = directory.getParent()) {
+            try {
+                if (fileSystem.listStatus(directory).length > 0 || !fileSystem.delete(directory, false)) {
+                    break;
+                }
+            } catch (IOException ioe) {
+                // Not ours to remove (permissions, concurrent writes).
+                break;
+            }
+        }
+    }
+
+    private static class PositionalReadChannel implements SeekableByteChannel {
+
+        private final FSDataInputStream input;
+        private final long length;
+        private final boolean byteBufferReadable;
+        private byte[] copyBuffer;
+        private long pos = 0;
+        private boolean open = true;
+
+        private PositionalReadChannel(FSDataInputStream input, long length) {
+            this.input = input;
+            this.length = length;
+            this.byteBufferReadable = input.getWrappedStream() instanceof ByteBufferReadable;
+        }
+
+        @Override
+        public int read(ByteBuffer dst) throws IOException {
+            if (!open) {
+                throw new ClosedChannelException();
+            }
+            if (pos >= length) {
+                return -1;
+            }
+            int len = (int) Math.min(dst.remaining(), length - pos);
+            if (len == 0) {
+                return 0;
+            }
+            int read;
+            if (dst.hasArray()) {
+                read = input.read(pos, dst.array(), dst.arrayOffset() + dst.position(), len);
+                if (read > 0) {
+                    dst.position(dst.position() + read);
+                }
+            } else if (byteBufferReadable) {
+                // The stream is only used by this channel.
+                input.seek(pos);
+                ByteBuffer limited = dst.duplicate();
+                limited.limit(limited.position() + len);
+                read = input.read(limited);
+                if (read > 0) {
+                    dst.position(dst.position() + read);
+                }
+            } else {
+                if (copyBuffer == null) {
+                    copyBuffer = new byte[COPY_BUFFER_SIZE];
+                }
+                read = input.read(pos, copyBuffer, 0, Math.min(len, copyBuffer.length));
+                if (read > 0) {
+                    dst.put(copyBuffer, 0, read);
+                }
+            }
+            if (read < 0) {
+                return -1;
+            }
+            pos += read;
+            return read;
+        }
+
+        @Override
+        public int write(ByteBuffer src) {
+            throw new NonWritableChannelException();
+        }
+
+        @Override
+        public long position() {
+            return pos;
+        }
+
+        @Override
+        public SeekableByteChannel position(long newPosition) {
+            if (newPosition < 0) {
+                throw new IllegalArgumentException("negative position");
+            }
+            pos = newPosition;
+            return this;
+        }
+
+        @Override
+        public long size() {
+            return length;
+        }
+
+        @Override
+        public SeekableByteChannel truncate(long size) {
+            throw new NonWritableChannelException();
+        }
+
+        @Override
+        public boolean isOpen() {
+            return open;
+        }
+
+        @Override
+        public void close() throws IOException {
+            open = false;
+            input.close();
+        }
     }
 }
@@ -0,0 +1,149 @@
+package no.ssb.lds.data;
+
+import no.ssb.lds.data.client.Range;
+import no.ssb.lds.data.client.VersionedPath;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class HadoopBackendTest {
+
+    private HadoopBackend backend;
+    private String directory;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        backend = new HadoopBackend(FileSystem.getLocal(new Configuration()));
+        directory = Files.createTempDirectory("lds-data-hadoop").toString() + "/";
+    }
+
+    private byte[] write(String path, int size) throws IOException {
+        byte[] bytes = new byte[size];
+        for (int i = 0; i < size; i++) {
+            bytes[i] = (byte) i;
+        }
+        try (SeekableByteChannel channel = backend.write(path)) {
+            ByteBuffer direct = ByteBuffer.allocateDirect(size);
+            direct.put(bytes).flip();
+            channel.write(direct);
+        }
+        return bytes;
+    }
+
+    @Test
+    void testList() throws IOException {
+        write(directory + "dataset/1/file", 1);
+        write(directory + "dataset/2/file", 1);
+        write(directory + "other/file", 1);
+
+        assertThat(backend.list(directory + "dataset/").toList().blockingGet()).containsExactlyInAnyOrder(
+                directory + "dataset/1/file",
+                directory + "dataset/2/file"
+        );
+        assertThat(backend.list(directory + "data").toList().blockingGet()).hasSize(2);
+        assertThat(backend.list(directory + "missing/").toList().blockingGet()).isEmpty();
+    }
+
+    @Test
+    void testListVersions() throws IOException {
+        write(directory + "dataset/1/file", 1);
+        write(directory + "dataset/2/file", 2);
+
+        List<VersionedPath> files = backend.listVersions(directory + "dataset/").toList().blockingGet();
+        assertThat(files).extracting(VersionedPath::getPath).containsExactlyInAnyOrder(
+                directory + "dataset/1/file",
+                directory + "dataset/2/file"
+        );
+        for (VersionedPath file : files) {
+            assertThat(file.getVersion()).isEqualTo(backend.version(file.getPath()));
+        }
+    }
+
+    @Test
+    void testListRelative() throws IOException {
+        // Relative to the working directory of the file system, the module directory.
+        String relative = "target/" + Path.of(directory).getFileName() + "/";
+        write(relative + "dataset/1/file", 1);
+        write(relative + "dataset/2/file", 1);
+        write(relative + "other/file", 1);
+
+        assertThat(backend.list(relative + "dataset/").toList().blockingGet()).containsExactlyInAnyOrder(
+                relative + "dataset/1/file",
+                relative + "dataset/2/file"
+        );
+        assertThat(backend.list(relative + "data").toList().blockingGet()).containsExactlyInAnyOrder(
+                relative + "dataset/1/file",
+                relative + "dataset/2/file"
+        );
+    }
+
+    @Test
+    void testDeleteKeepsRoot() throws IOException {
+        String root = directory + "root/";
+        backend = new HadoopBackend(FileSystem.getLocal(new Configuration()), root);
+        write(root + "dataset/1/file", 1);
+        write(root + "dataset/2/file", 1);
+
+        backend.delete(root + "dataset/1/file");
+        assertThat(Files.exists(Path.of(root, "dataset/1"))).isFalse();
+        assertThat(Files.isDirectory(Path.of(root, "dataset"))).isTrue();
+
+        backend.delete(root + "dataset/2/file");
+        assertThat(Files.exists(Path.of(root, "dataset"))).isFalse();
+        assertThat(Files.isDirectory(Path.of(root))).isTrue();
+    }
+
+    @Test
+    void testDeleteWithoutRoot() throws IOException {
+        write(directory + "dataset/1/file", 1);
+
+        backend.delete(directory + "dataset/1/file");
+        assertThat(Files.isDirectory(Path.of(directory, "dataset/1"))).isTrue();
+    }
+
+    @Test
+    void testRead() throws IOException {
+        byte[] bytes = write(directory + "file", 100_000);
+
+        try (SeekableByteChannel channel = backend.read(directory + "file")) {
+            assertThat(channel.size()).isEqualTo(100_000);
+
+            ByteBuffer heap = ByteBuffer.allocate(10);
+            channel.position(50_000);
+            assertThat(channel.read(heap)).isEqualTo(10);
+            assertThat(heap.array()).containsExactly(Arrays.copyOfRange(bytes, 50_000, 50_010));
+
+            ByteBuffer direct = ByteBuffer.allocateDirect(100);
+            channel.position(99_990);
+            assertThat(channel.read(direct)).isEqualTo(10);
+            assertThat(channel.read(direct)).isEqualTo(-1);
+            assertThat(channel.position()).isEqualTo(100_000);
+        }
+    }
+
+    @Test
+    void testReadRanges() throws IOException {
+        byte[] bytes = write(directory + "file", 10_000);
+
+        List<ByteBuffer> buffers = backend.readRanges(directory + "file", List.of(
+                new Range(10, 20), new Range(5_000, 100)
+        ));
+
+        assertThat(buffers).hasSize(2);
+        assertThat(buffers.get(0).remaining()).isEqualTo(20);
+        assertThat(buffers.get(0).get(buffers.get(0).position())).isEqualTo(bytes[10]);
+        assertThat(buffers.get(1).remaining()).isEqualTo(100);
+        assertThat(buffers.get(1).get(buffers.get(1).position())).isEqualTo(bytes[5_000]);
+    }
+}